@@ -0,0 +1,167 @@
+package coop.constellation.connectorservices.workflowexample.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtensifi.connectorservices.common.events.RealtimeEventService;
+import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestParams;
+import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
+import com.xtensifi.connectorservices.common.workflow.ConnectorState;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.service.JacksonConfiguration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Payloads shaped like the ones kivapublic and the connector hub send, sized
+ * by the benchmark params so the numbers scale the way production traffic
+ * does.
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * The object mapper as the application sees it: Spring Boot's defaults plus
+     * JacksonConfiguration.
+     */
+    public static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        return new JacksonConfiguration(objectMapper).configureObjectMapper();
+    }
+
+    /**
+     * A connector message with paramCount method params, paramCount global
+     * connector params and a few values that need HTML unescaping.
+     */
+    public static String connectorMessageJson(int paramCount) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"externalServicePayload\":{");
+        json.append("\"userData\":{\"userId\":\"12345\"},");
+        json.append("\"payload\":{\"valuePair\":[");
+        appendValuePairs(json, "param", paramCount);
+        json.append(",{\"name\":\"accountId\",\"value\":\"12345-S0001\"}");
+        json.append(",{\"name\":\"memo\",\"value\":\"Rent &amp; utilities &lt;March&gt;\"}");
+        json.append("]}},");
+        json.append("\"connectorParametersResponse\":{\"parameters\":{\"valuePair\":[");
+        appendValuePairs(json, "global", paramCount);
+        json.append(",{\"name\":\"org\",\"value\":\"benchmark-cu\"}");
+        json.append(",{\"name\":\"EnableConnectorLogging\",\"value\":\"false\"}");
+        json.append("]}}}");
+        return json.toString();
+    }
+
+    private static void appendValuePairs(StringBuilder json, String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"").append(prefix).append(i).append("\",\"value\":\"value-").append(i)
+                    .append("\"}");
+        }
+        if (count == 0) {
+            json.append("{\"name\":\"").append(prefix).append("\",\"value\":\"\"}");
+        }
+    }
+
+    /** A getAccounts response with accountCount deposit accounts. */
+    public static String accountsJson(int accountCount) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"accountContainer\":{\"depositMessage\":{\"depositList\":{\"deposit\":[");
+        for (int i = 0; i < accountCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"accountId\":\"12345-S").append(String.format("%04d", i)).append('"')
+                    .append(",\"type\":\"Savings\",\"description\":\"Primary Savings ").append(i).append('"')
+                    .append(",\"accountStatus\":\"Active\",\"currency\":\"USD\"")
+                    .append(",\"currentBalance\":{\"value\":").append(1000 + i).append(".25}")
+                    .append(",\"availableBalance\":{\"value\":").append(900 + i).append(".25}")
+                    .append(",\"openDate\":\"2019-04-0").append(1 + i % 9).append("\"}");
+        }
+        json.append("]}}}}");
+        return json.toString();
+    }
+
+    /** A getTransactions response with transactionCount posted transactions. */
+    public static String transactionsJson(int transactionCount) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"transactionMessage\":{\"transactionList\":{\"transaction\":[");
+        for (int i = 0; i < transactionCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"transactionId\":\"T").append(i).append('"')
+                    .append(",\"accountId\":\"12345-S0001\",\"type\":\"Debit\",\"status\":\"Posted\"")
+                    .append(",\"amount\":{\"value\":").append(i % 500).append(".99,\"currencyCode\":\"USD\"}")
+                    .append(",\"description\":\"POS PURCHASE GROCERY STORE #").append(i).append('"')
+                    .append(",\"category\":\"Groceries\"")
+                    .append(",\"postedDate\":\"2024-03-").append(String.format("%02d", 1 + i % 28))
+                    .append("T12:00:00Z\"}");
+        }
+        json.append("]}}}");
+        return json.toString();
+    }
+
+    /** A connector state as the hub hands it over once the kiva call answered. */
+    public static ConnectorState connectorState(ConnectorMessage connectorMessage, String method, String... responses) {
+        ConnectorRequestData connectorRequestData = new ConnectorRequestData("kivapublic", "1.0", method);
+        ConnectorState connectorState = new ConnectorState(
+                new ConnectorRequestParams(connectorMessage, connectorRequestData));
+        for (String response : responses) {
+            connectorState.addResponse(new ConnectorResponse(connectorRequestData, response));
+        }
+        return connectorState;
+    }
+
+    /**
+     * A RealtimeEventService that accepts every event without sending it, so
+     * benchmarks measure building the event and not the event bus.
+     */
+    public static RealtimeEventService noopRealtimeEventService() {
+        return (RealtimeEventService) Proxy.newProxyInstance(RealtimeEventService.class.getClassLoader(),
+                new Class<?>[] { RealtimeEventService.class }, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        switch (method.getName()) {
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                return "NoopRealtimeEventService";
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    /** Discards every message, so benchmarks measure the code and not the log sink. */
+    public static class NoopConnectorLogging extends ConnectorLogging {
+        @Override
+        public void debug(ConnectorMessage connectorMessage, String message) {
+        }
+
+        @Override
+        public void error(ConnectorMessage connectorMessage, String message) {
+        }
+
+        @Override
+        public void fatal(ConnectorMessage connectorMessage, String message) {
+        }
+
+        @Override
+        public void info(ConnectorMessage connectorMessage, String message) {
+        }
+
+        @Override
+        public void trace(ConnectorMessage connectorMessage, String message) {
+        }
+
+        @Override
+        public void warn(ConnectorMessage connectorMessage, String message) {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package coop.constellation.connectorservices.workflowexample.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtensifi.cufx.CustomData;
+import com.xtensifi.cufx.ValuePair;
+import com.xtensifi.dspco.ConnectorMessage;
+import com.xtensifi.dspco.ConnectorParametersResponse;
+import com.xtensifi.dspco.ExternalServicePayload;
+
+import coop.constellation.connectorservices.workflowexample.controller.ConnectorControllerBase;
+import org.apache.commons.text.StringEscapeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request ingress: reading the connector message and collecting its params.
+ * The eager benchmarks run the HashMap based getAllParams that ConnectorParams
+ * replaced, as the baseline. Run with -prof gc to compare allocations, reported
+ * per operation as gc.alloc.rate.norm:
+ *
+ * <pre>
+ * mvn -P jmh test-compile exec:exec -Djmh.args="ConnectorMessageBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConnectorMessageBenchmark {
+
+    /** Stages of a workflow pipeline that read params: param builder, handler and complete. */
+    private static final int STAGES = 3;
+
+    /** Params a typical stage reads. */
+    private static final String[] READ_PARAMS = { "accountId", "memo", "org" };
+
+    @Param({ "10", "50", "200" })
+    public int paramCount;
+
+    private ObjectMapper objectMapper;
+    private String connectorMessageJson;
+    private ConnectorMessage connectorMessage;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        connectorMessageJson = BenchmarkFixtures.connectorMessageJson(paramCount);
+        connectorMessage = objectMapper.readValue(connectorMessageJson, ConnectorMessage.class);
+    }
+
+    @Benchmark
+    public ConnectorMessage deserialize() throws IOException {
+        return objectMapper.readValue(connectorMessageJson, ConnectorMessage.class);
+    }
+
+    @Benchmark
+    public Map<String, String> getAllParams() {
+        return ConnectorControllerBase.getAllParams(connectorMessage);
+    }
+
+    @Benchmark
+    public Map<String, String> eagerGetAllParams() {
+        return eagerGetAllParams(connectorMessage);
+    }
+
+    /** Builds the params and reads every one of them, as a param builder would. */
+    @Benchmark
+    public void getAllParamsAndRead(Blackhole blackhole) {
+        Map<String, String> allParams = ConnectorControllerBase.getAllParams(connectorMessage);
+        for (String name : allParams.keySet()) {
+            blackhole.consume(allParams.get(name));
+        }
+    }
+
+    @Benchmark
+    public void eagerGetAllParamsAndRead(Blackhole blackhole) {
+        Map<String, String> allParams = eagerGetAllParams(connectorMessage);
+        for (String name : allParams.keySet()) {
+            blackhole.consume(allParams.get(name));
+        }
+    }
+
+    /** One request as pipelines read params now: built once, a few read per stage. */
+    @Benchmark
+    public void paramsPerRequest(Blackhole blackhole) {
+        Map<String, String> allParams = ConnectorControllerBase.getAllParams(connectorMessage);
+        for (int stage = 0; stage < STAGES; stage++) {
+            readSome(allParams, blackhole);
+        }
+    }
+
+    /** One request as pipelines read params before: rebuilt eagerly by every stage. */
+    @Benchmark
+    public void eagerParamsPerStage(Blackhole blackhole) {
+        for (int stage = 0; stage < STAGES; stage++) {
+            readSome(eagerGetAllParams(connectorMessage), blackhole);
+        }
+    }
+
+    private static void readSome(Map<String, String> allParams, Blackhole blackhole) {
+        for (String name : READ_PARAMS) {
+            blackhole.consume(allParams.get(name));
+        }
+    }
+
+    /* getAllParams before ConnectorParams: a HashMap with every value unescaped up front */
+    private static Map<String, String> eagerGetAllParams(ConnectorMessage connectorMessage) {
+        Map<String, String> allParams = new HashMap<>();
+        ExternalServicePayload externalServicePayload = connectorMessage.getExternalServicePayload();
+        ConnectorParametersResponse connectorParametersResponse = connectorMessage.getConnectorParametersResponse();
+        if (externalServicePayload != null) {
+            putUnescaped(allParams, externalServicePayload.getPayload());
+        }
+        if (connectorParametersResponse != null) {
+            putUnescaped(allParams, connectorParametersResponse.getParameters());
+        }
+        return allParams;
+    }
+
+    private static void putUnescaped(Map<String, String> allParams, CustomData params) {
+        if (params != null) {
+            for (ValuePair valuePair : params.getValuePair()) {
+                allParams.putIfAbsent(valuePair.getName(), StringEscapeUtils.unescapeHtml4(valuePair.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package coop.constellation.connectorservices.workflowexample.benchmarks;
+
+import coop.constellation.connectorservices.workflowexample.service.WorkflowExecutorsImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of concurrent requests whose pipeline stage blocks on the hub, as
+ * waitForConnectorResponse does, under each workflow.executor.mode. Platform
+ * pools run hubWaitMillis per pool thread at a time, virtual threads run the
+ * whole burst at once. Each bulkhead is sized to take the burst without
+ * rejecting. Virtual mode needs a Java 21 runtime, setup fails on older ones
+ * rather than measuring the platform fallback:
+ *
+ * <pre>
+ * mvn -P jmh test-compile exec:exec -Djmh.args="ExecutorModeBenchmark -p concurrentWaits=1000"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ExecutorModeBenchmark {
+
+    private static final String WORKFLOW_METHOD = "retrieveTransactionList";
+
+    @Param({ "platform", "virtual" })
+    public String mode;
+
+    @Param({ "16", "100", "1000" })
+    public int concurrentWaits;
+
+    @Param({ "20" })
+    public long hubWaitMillis;
+
+    private WorkflowExecutorsImpl workflowExecutors;
+    private Executor executor;
+
+    @Setup
+    public void setUp() {
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "workflow.executor.mode", mode,
+                "workflow.executor.default.queue-capacity", String.valueOf(concurrentWaits),
+                "workflow.executor.default.max-concurrency", String.valueOf(concurrentWaits))));
+        workflowExecutors = new WorkflowExecutorsImpl(env);
+        if (!mode.equals(workflowExecutors.getMode())) {
+            workflowExecutors.destroy();
+            throw new IllegalStateException("workflow.executor.mode=" + mode + " is not available on Java "
+                    + Runtime.version().feature());
+        }
+        executor = workflowExecutors.get(WORKFLOW_METHOD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workflowExecutors.destroy();
+    }
+
+    /** Starts every wait, then joins them all; one operation is the whole burst. */
+    @Benchmark
+    public int concurrentHubWaits() {
+        CompletableFuture<?>[] waits = new CompletableFuture<?>[concurrentWaits];
+        for (int i = 0; i < concurrentWaits; i++) {
+            waits[i] = CompletableFuture.runAsync(this::waitForHub, executor);
+        }
+        CompletableFuture.allOf(waits).join();
+        return waits.length;
+    }
+
+    private void waitForHub() {
+        try {
+            Thread.sleep(hubWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package coop.constellation.connectorservices.workflowexample.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtensifi.connectorservices.common.events.RealtimeEventService;
+import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
+import com.xtensifi.connectorservices.common.workflow.ConnectorState;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.controller.ConnectorControllerBase;
+import coop.constellation.connectorservices.workflowexample.handlers.EditTransactionHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.MultiCallHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.P2pTransferHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveAccountListHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveAccountListRefreshHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveTransactionCategoriesHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveTransactionListHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveUserByIdHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveUserBySocialHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.StartTransferHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.StopPaymentHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.ValidateMemberAccountInfoHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.WorkflowHandlerLogic;
+import coop.constellation.connectorservices.workflowexample.helpers.RealtimeEvents;
+import coop.constellation.connectorservices.workflowexample.helpers.TransactionPage;
+import coop.constellation.connectorservices.workflowexample.service.RealtimeEventsImpl;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * generateResponse of every workflow handler against a kiva response of the
+ * given size: accounts for the account handlers, transactions for the
+ * transaction list and multiCall (five accounts), the party fixture for the
+ * user handlers and a small status payload for the write handlers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HandlerBenchmark {
+
+    private static final int MULTI_CALL_ACCOUNTS = 5;
+    private static final String WRITE_RESPONSE = "{\"success\":true,\"transactionId\":\"T1000\",\"status\":\"Posted\"}";
+
+    @Param({ "retrieveAccountList", "retrieveAccountListRefresh", "retrieveTransactionList",
+            "retrieveTransactionListPage", "retrieveTransactionCategories", "retrieveUserById", "retrieveUserBySocial", "validateMemberAccountInfo",
+            "editTransaction", "startTransfer", "p2pTransfer", "stopPayment", "multiCall" })
+    public String handler;
+
+    @Param({ "1", "50", "500" })
+    public int size;
+
+    private WorkflowHandlerLogic handlerLogic;
+    private Map<String, String> allParams;
+    private ConnectorMessage connectorMessage;
+    private String method;
+    private String[] responses;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = BenchmarkFixtures.objectMapper();
+        connectorMessage = objectMapper.readValue(BenchmarkFixtures.connectorMessageJson(20), ConnectorMessage.class);
+        allParams = ConnectorControllerBase.getAllParams(connectorMessage);
+
+        ConnectorLogging logger = new BenchmarkFixtures.NoopConnectorLogging();
+        RealtimeEventService realtimeEventService = BenchmarkFixtures.noopRealtimeEventService();
+        RealtimeEvents realtimeEvents = new RealtimeEventsImpl();
+        String party = IOUtils.resourceToString("/kivapublic-getPartyById.json", StandardCharsets.UTF_8);
+
+        switch (handler) {
+            case "retrieveAccountList":
+                use(new RetrieveAccountListHandler(logger), "getAccounts", BenchmarkFixtures.accountsJson(size));
+                break;
+            case "retrieveAccountListRefresh":
+                use(new RetrieveAccountListRefreshHandler(logger), "getAccountsRefresh",
+                        BenchmarkFixtures.accountsJson(size));
+                break;
+            case "retrieveTransactionList":
+                use(new RetrieveTransactionListHandler(logger, objectMapper), "getTransactions",
+                        BenchmarkFixtures.transactionsJson(size));
+                break;
+            case "retrieveTransactionListPage":
+                // the streaming page and filter mode, a page of 20 groceries
+                Map<String, String> pageParams = new HashMap<>(allParams);
+                pageParams.put(TransactionPage.PAGE_SIZE, "20");
+                pageParams.put(TransactionPage.CATEGORY, "Groceries");
+                allParams = pageParams;
+                use(new RetrieveTransactionListHandler(logger, objectMapper), "getTransactions",
+                        BenchmarkFixtures.transactionsJson(size));
+                break;
+            case "retrieveTransactionCategories":
+                use(new RetrieveTransactionCategoriesHandler(logger), "getTransactionCategories",
+                        BenchmarkFixtures.transactionsJson(size));
+                break;
+            case "retrieveUserById":
+                use(new RetrieveUserByIdHandler(logger), "getPartyById", party);
+                break;
+            case "retrieveUserBySocial":
+                use(new RetrieveUserBySocialHandler(logger), "getPartyBySocial", party);
+                break;
+            case "validateMemberAccountInfo":
+                use(new ValidateMemberAccountInfoHandler(logger), "validateMemberAccountInfo", WRITE_RESPONSE);
+                break;
+            case "editTransaction":
+                use(new EditTransactionHandler(logger), "editTransaction", WRITE_RESPONSE);
+                break;
+            case "startTransfer":
+                use(new StartTransferHandler(logger, realtimeEventService, realtimeEvents), "startTransfer",
+                        WRITE_RESPONSE);
+                break;
+            case "p2pTransfer":
+                use(new P2pTransferHandler(logger, realtimeEventService, realtimeEvents), "p2pTransfer",
+                        WRITE_RESPONSE);
+                break;
+            case "stopPayment":
+                use(new StopPaymentHandler(logger, realtimeEventService, realtimeEvents), "stopPayment",
+                        WRITE_RESPONSE);
+                break;
+            case "multiCall":
+                String[] transactions = new String[MULTI_CALL_ACCOUNTS];
+                Arrays.fill(transactions, BenchmarkFixtures.transactionsJson(size));
+                use(new MultiCallHandler(logger), "getTransactions", transactions);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown handler " + handler);
+        }
+    }
+
+    private void use(WorkflowHandlerLogic handlerLogic, String method, String... responses) {
+        this.handlerLogic = handlerLogic;
+        this.method = method;
+        this.responses = responses;
+    }
+
+    /**
+     * A fresh state per invocation, as handlers set the response on it. Building
+     * it is cheap next to the handler.
+     */
+    @Benchmark
+    public String generateResponse() throws IOException, ParseException {
+        ConnectorState connectorState = BenchmarkFixtures.connectorState(connectorMessage, method, responses);
+        return handlerLogic.generateResponse(allParams, connectorState);
+    }
+}
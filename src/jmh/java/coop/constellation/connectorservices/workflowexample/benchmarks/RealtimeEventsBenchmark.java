@@ -0,0 +1,67 @@
+package coop.constellation.connectorservices.workflowexample.benchmarks;
+
+import com.xtensifi.connectorservices.common.events.RealtimeEventService;
+import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.service.RealtimeEventsImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static coop.constellation.connectorservices.workflowexample.helpers.Constants.CDP_SOURCE;
+import static coop.constellation.connectorservices.workflowexample.helpers.Constants.PLATFORM_ACCOUNT_TRANSACTION_ADDED;
+
+/**
+ * Building and handing off a realtime event, against a RealtimeEventService
+ * that drops it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RealtimeEventsBenchmark {
+
+    @Param({ "2", "20" })
+    public int affectedItemCount;
+
+    private RealtimeEventsImpl realtimeEvents;
+    private RealtimeEventService realtimeEventService;
+    private ConnectorLogging logger;
+    private ConnectorMessage connectorMessage;
+    private List<String> affectedItems;
+
+    @Setup
+    public void setUp() throws IOException {
+        realtimeEvents = new RealtimeEventsImpl();
+        realtimeEventService = BenchmarkFixtures.noopRealtimeEventService();
+        logger = new BenchmarkFixtures.NoopConnectorLogging();
+        connectorMessage = BenchmarkFixtures.objectMapper().readValue(BenchmarkFixtures.connectorMessageJson(20),
+                ConnectorMessage.class);
+        affectedItems = new ArrayList<>();
+        for (int i = 0; i < affectedItemCount; i++) {
+            affectedItems.add("12345-S" + i);
+        }
+    }
+
+    @Benchmark
+    public void send() {
+        realtimeEvents.send(CDP_SOURCE, PLATFORM_ACCOUNT_TRANSACTION_ADDED, affectedItems, connectorMessage, logger,
+                realtimeEventService);
+    }
+}
@@ -0,0 +1,55 @@
+package coop.constellation.connectorservices.workflowexample.controller;
+
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.benchmarks.BenchmarkFixtures;
+import coop.constellation.connectorservices.workflowexample.handlers.HandlerLogic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The synchronous request path: deserialize, collect params, run the handler
+ * and wrap its response. Lives in the controller package because
+ * handleConnectorMessage is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HandleConnectorMessageBenchmark {
+
+    @Param({ "1", "20", "200" })
+    public int accountCount;
+
+    private ConnectorControllerBase controllerBase;
+    private String connectorMessageJson;
+    private HandlerLogic handlerLogic;
+
+    @Setup
+    public void setUp() {
+        controllerBase = new ConnectorControllerBase();
+        controllerBase.setObjectMapper(BenchmarkFixtures.objectMapper());
+        controllerBase.setConnectorLogging(new BenchmarkFixtures.NoopConnectorLogging());
+        connectorMessageJson = BenchmarkFixtures.connectorMessageJson(20);
+        String accounts = BenchmarkFixtures.accountsJson(accountCount);
+        handlerLogic = (parms, userId, connectorMessage) -> accounts;
+    }
+
+    @Benchmark
+    public ConnectorMessage handleConnectorMessage() {
+        return controllerBase.handleConnectorMessage("benchmark: ", connectorMessageJson, handlerLogic);
+    }
+}
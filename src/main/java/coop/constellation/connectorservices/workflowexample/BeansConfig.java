@@ -1,5 +1,6 @@
 package coop.constellation.connectorservices.workflowexample;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xtensifi.connectorservices.common.events.RealtimeEventService;
 import com.xtensifi.connectorservices.common.events.RealtimeEventServiceImpl;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
@@ -9,20 +10,31 @@ import com.xtensifi.connectorservices.common.workflow.ConnectorHubServiceImpl;
 import com.xtensifi.dspco.ConnectorMessage;
 
 import coop.constellation.connectorservices.workflowexample.controller.BaseParamsSupplier;
+import coop.constellation.connectorservices.workflowexample.helpers.AsyncConnectorLogging;
 import coop.constellation.connectorservices.workflowexample.helpers.ConnectorResponseEntityBuilder;
 import coop.constellation.connectorservices.workflowexample.helpers.EnhancedConnectorLogging;
 import coop.constellation.connectorservices.workflowexample.helpers.RealtimeEvents;
 import coop.constellation.connectorservices.workflowexample.helpers.StdoutConnectorLogging;
+import coop.constellation.connectorservices.workflowexample.service.AsyncRealtimeEvents;
+import coop.constellation.connectorservices.workflowexample.service.GuardedConnectorHubService;
+import coop.constellation.connectorservices.workflowexample.service.IdempotencyStore;
 import coop.constellation.connectorservices.workflowexample.service.RealtimeEventsImpl;
+import coop.constellation.connectorservices.workflowexample.service.ResponseCache;
+import coop.constellation.connectorservices.workflowexample.service.WorkflowExecutorsImpl;
 import lombok.AllArgsConstructor;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
@@ -33,14 +45,28 @@ public class BeansConfig {
 
     @Bean
     @Profile("!local")
-    ConnectorLogging connectorLogging() {
-        return new EnhancedConnectorLogging();
+    AsyncConnectorLogging connectorLogging(Environment env) {
+        return asyncConnectorLogging(new EnhancedConnectorLogging(), env);
     }
 
     @Bean
     @Profile("local")
-    ConnectorLogging localConnectorLogging() {
-        return new StdoutConnectorLogging();
+    AsyncConnectorLogging localConnectorLogging(Environment env) {
+        return asyncConnectorLogging(new StdoutConnectorLogging(), env);
+    }
+
+    /**
+     * Writes log messages from a background thread so workflow stages don't wait
+     * on log I/O. workflow.logging.async.enabled=false logs synchronously again.
+     */
+    private static AsyncConnectorLogging asyncConnectorLogging(ConnectorLogging delegate, Environment env) {
+        return new AsyncConnectorLogging(delegate,
+                env.getProperty("workflow.logging.async.enabled", Boolean.class, true),
+                env.getProperty("workflow.logging.async.capacity", Integer.class, 8192),
+                env.getProperty("workflow.logging.async.batch-size", Integer.class, 256),
+                env.getProperty("workflow.logging.async.flush-interval-ms", Long.class, 5L),
+                env.getProperty("workflow.logging.async.overflow-policy", AsyncConnectorLogging.OverflowPolicy.class,
+                        AsyncConnectorLogging.OverflowPolicy.DROP_DEBUG_FIRST));
     }
 
     /**
@@ -53,15 +79,47 @@ public class BeansConfig {
         return new RealtimeEventServiceImpl();
     }
 
+    /**
+     * Realtime events are published from a background thread unless
+     * workflow.events.async.enabled is false.
+     */
     @Bean
-    RealtimeEvents realtimeEvents() {
-        return new RealtimeEventsImpl();
+    AsyncRealtimeEvents realtimeEvents(Environment env) {
+        return new AsyncRealtimeEvents(new RealtimeEventsImpl(),
+                env.getProperty("workflow.events.async.enabled", Boolean.class, true),
+                env.getProperty("workflow.events.async.capacity", Integer.class, 1024),
+                env.getProperty("workflow.events.async.batch-size", Integer.class, 100),
+                env.getProperty("workflow.events.async.max-attempts", Integer.class, 5),
+                env.getProperty("workflow.events.async.backoff-ms", Long.class, 100L),
+                env.getProperty("workflow.events.async.max-backoff-ms", Long.class, 5000L),
+                env.getProperty("workflow.events.coalesce-window-ms", Long.class, 250L));
     }
 
     @Bean
     @Profile("!local")
-    ConnectorHubService connectorHubService() {
-        return new ConnectorHubServiceImpl();
+    GuardedConnectorHubService connectorHubService(Environment env) {
+        return guardedConnectorHubService(new ConnectorHubServiceImpl(), env);
+    }
+
+    /**
+     * Wraps the connector hub in a per-kiva-method circuit breaker and adaptive
+     * concurrency limit, so calls fail fast while kivapublic is degraded.
+     * workflow.hub.guard.enabled=false passes every call straight through.
+     */
+    static GuardedConnectorHubService guardedConnectorHubService(ConnectorHubService delegate, Environment env) {
+        return new GuardedConnectorHubService(delegate, GuardedConnectorHubService.Settings.builder()
+                .enabled(env.getProperty("workflow.hub.guard.enabled", Boolean.class, true))
+                .windowSize(env.getProperty("workflow.hub.breaker.window-size", Integer.class, 20))
+                .minCalls(env.getProperty("workflow.hub.breaker.min-calls", Integer.class, 10))
+                .failureRatePercent(env.getProperty("workflow.hub.breaker.failure-rate-percent", Integer.class, 50))
+                .openMillis(env.getProperty("workflow.hub.breaker.open-ms", Long.class, 10000L))
+                .halfOpenCalls(env.getProperty("workflow.hub.breaker.half-open-calls", Integer.class, 3))
+                .initialLimit(env.getProperty("workflow.hub.limit.initial", Integer.class, 20))
+                .minLimit(env.getProperty("workflow.hub.limit.min", Integer.class, 2))
+                .maxLimit(env.getProperty("workflow.hub.limit.max", Integer.class, 200))
+                .slowCallMillis(env.getProperty("workflow.hub.limit.slow-call-ms", Long.class, 2000L))
+                .backoffRatio(env.getProperty("workflow.hub.limit.backoff-ratio", Double.class, 0.9))
+                .build());
     }
 
     /**
@@ -73,6 +131,43 @@ public class BeansConfig {
         return () -> Map.of("localCpConnectionInitSql", "SET TIME ZONE 'UTC';");
     }
 
+    /**
+     * Bounded per-workflow-method pools used for every async pipeline stage.
+     * Declared with the implementation type so it is also picked up as a
+     * StatsSupplier.
+     */
+    @Bean
+    WorkflowExecutorsImpl workflowExecutors(Environment env) {
+        return new WorkflowExecutorsImpl(env);
+    }
+
+    /**
+     * Per-user cache for read-only kivapublic methods. A ttl of 0 disables it.
+     */
+    @Bean
+    ResponseCache responseCache(@Value("${workflow.cache.ttl-ms:30000}") long ttlMillis,
+            @Value("${workflow.cache.max-entries:10000}") int maxEntries,
+            @Value("${workflow.cache.methods:getAccounts,getTransactions,getTransactionCategories,getPartyById}") Set<String> methods) {
+        return new ResponseCache(ttlMillis, maxEntries, methods);
+    }
+
+    /**
+     * Runs of transfers and stop payments by idempotency key, kept in memory.
+     * Setting workflow.idempotency.file journals them, so retries are still
+     * recognised after a restart; the journal holds kiva responses, so it must
+     * be on storage only this service can read.
+     */
+    @Bean
+    IdempotencyStore idempotencyStore(ObjectMapper mapper, Environment env) throws IOException {
+        String file = env.getProperty("workflow.idempotency.file", "");
+        return new IdempotencyStore(mapper,
+                env.getProperty("workflow.idempotency.enabled", Boolean.class, true),
+                env.getProperty("workflow.idempotency.ttl-ms", Long.class, 86400000L),
+                env.getProperty("workflow.idempotency.unknown-ttl-ms", Long.class, 900000L),
+                env.getProperty("workflow.idempotency.max-entries", Integer.class, 10000),
+                file.isBlank() ? null : Paths.get(file));
+    }
+
     @Bean
     ConnectorConfig connectorConfig() {
         return new ConnectorConfig();
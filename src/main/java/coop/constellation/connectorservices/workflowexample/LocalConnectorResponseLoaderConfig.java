@@ -2,44 +2,74 @@ package coop.constellation.connectorservices.workflowexample;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
-import com.xtensifi.connectorservices.common.workflow.ConnectorHubService;
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
 import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
+import coop.constellation.connectorservices.workflowexample.helpers.FixtureStore;
 import coop.constellation.connectorservices.workflowexample.helpers.MockConnectorHubService;
+import coop.constellation.connectorservices.workflowexample.helpers.MockHubBehavior;
+import coop.constellation.connectorservices.workflowexample.helpers.MockHubCompletions;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowExecutors;
+import coop.constellation.connectorservices.workflowexample.service.GuardedConnectorHubService;
 
-import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 @Configuration
 public class LocalConnectorResponseLoaderConfig {
     @Bean
     @Profile("local")
-    ConnectorHubService localConnectorHubService(@Qualifier("localConnectorLogging") ConnectorLogging clog,
-            ObjectMapper mapper) {
-        return new MockConnectorHubService(connectorState -> {
+    MockHubCompletions mockHubCompletions() {
+        return new MockHubCompletions();
+    }
 
-            String method = connectorState.getConnectorRequestParams().getConnectorRequestData().getMethod();
-            String connectorName = connectorState.getConnectorRequestParams().getConnectorRequestData()
-                    .getConnectorName();
-            // load response
-            try {
-                String response = "";
+    /**
+     * Kiva responses for the mock hub. mock.hub.fixtures-dir adds a directory of
+     * fixtures on top of the classpath ones, reloaded when its files change.
+     */
+    @Bean
+    @Profile("local")
+    FixtureStore fixtureStore(Environment env) throws IOException {
+        String fixturesDir = env.getProperty("mock.hub.fixtures-dir");
+        return new FixtureStore(fixturesDir != null ? Paths.get(fixturesDir) : null,
+                env.getProperty("mock.hub.fixtures-watch", Boolean.class, true));
+    }
 
-                response = IOUtils.resourceToString(String.format("/%s-%s.json", connectorName, method),
-                        StandardCharsets.UTF_8);
+    /**
+     * The mock hub behind the same circuit breaker and concurrency limit as the
+     * deployed one, so load tests exercise them.
+     */
+    @Bean
+    @Profile("local")
+    GuardedConnectorHubService localConnectorHubService(@Qualifier("localConnectorLogging") ConnectorLogging clog,
+            ObjectMapper mapper, WorkflowExecutors workflowExecutors, Environment env,
+            MockHubCompletions mockHubCompletions, FixtureStore fixtureStore) {
+        String missingFixtureResponse = env.getProperty("mock.hub.missing-fixture-response");
+        return BeansConfig.guardedConnectorHubService(new MockConnectorHubService(connectorState -> {
 
-                connectorState.addResponse(new ConnectorResponse(
-                        connectorState.getConnectorRequestParams().getConnectorRequestData(), response));
-                return connectorState;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            ConnectorRequestData connectorRequestData = connectorState.getConnectorRequestParams()
+                    .getConnectorRequestData();
+            // load response
+            String response = fixtureStore.find(connectorRequestData.getConnectorName(),
+                    connectorRequestData.getMethod(), connectorState.getConnectorMessage());
+            if (response == null) {
+                if (missingFixtureResponse == null) {
+                    throw new IllegalStateException("No mock hub fixture for "
+                            + connectorRequestData.getConnectorName() + "-" + connectorRequestData.getMethod());
+                }
+                // lets a load test drive methods nobody recorded a fixture for yet
+                response = missingFixtureResponse;
             }
 
-        }, clog);
+            connectorState.addResponse(new ConnectorResponse(connectorRequestData, response));
+            return connectorState;
+
+        }, clog, workflowExecutors.get("connectorHub"), new MockHubBehavior(env), mockHubCompletions), env);
     }
 
 }
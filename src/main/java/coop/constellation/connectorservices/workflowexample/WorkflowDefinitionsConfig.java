@@ -0,0 +1,199 @@
+package coop.constellation.connectorservices.workflowexample;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
+
+import coop.constellation.connectorservices.workflowexample.handlers.EditTransactionHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.P2pTransferHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveAccountListHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveAccountListRefreshHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveTransactionCategoriesHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveTransactionListHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveUserByIdHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.RetrieveUserBySocialHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.StartTransferHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.StopPaymentHandler;
+import coop.constellation.connectorservices.workflowexample.handlers.ValidateMemberAccountInfoHandler;
+import coop.constellation.connectorservices.workflowexample.helpers.LazyLogging;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowDefinition;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The single kivapublic call workflow methods. Each one is compiled into a
+ * pipeline by the controller at startup and served at
+ * /externalConnector/workflowMethodExample/1.0/{name}. More can be added with
+ * workflow.definitions properties, see the README.
+ */
+@Configuration
+public class WorkflowDefinitionsConfig {
+
+    private static final List<String> TRANSFER_PARAMS = List.of("accountFrom", "accountTo", "transferAmount",
+            "transferMemo", "occurrenceFromAccountType", "occurrenceToAccountType", "paymentType");
+
+    @Bean
+    WorkflowDefinition retrieveAccountListRefreshWorkflow(RetrieveAccountListRefreshHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("retrieveAccountListRefresh")
+                .kivaMethod("getAccountsRefresh")
+                .handler(handler)
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition retrieveAccountListWorkflow(RetrieveAccountListHandler handler, ConnectorLogging clog) {
+        return WorkflowDefinition.builder()
+                .name("retrieveAccountList")
+                .kivaMethod("getAccounts")
+                .handler(handler)
+                .paramsMapper((connectorMessage, allParams) -> {
+                    Map<String, String> kivaParams = new HashMap<>();
+
+                    LazyLogging.info(clog, connectorMessage, () -> "all params GC: " + allParams);
+
+                    // Finding the value of the filters parameter passed from the tile
+                    String strFilter = allParams.getOrDefault("filters", "");
+
+                    if (!strFilter.equals("")) {
+                        kivaParams.put("accountFilter", strFilter);
+                    }
+
+                    // Returns our list of parameters to pass into the kivapublic call
+                    return kivaParams;
+                })
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition retrieveTransactionListWorkflow(RetrieveTransactionListHandler handler,
+            ConnectorLogging clog, ObjectMapper mapper) {
+        return WorkflowDefinition.builder()
+                .name("retrieveTransactionList")
+                .kivaMethod("getTransactions")
+                .handler(handler)
+                .paramsMapper((connectorMessage, allParams) -> {
+                    Map<String, String> kivaParams = new HashMap<>();
+
+                    LazyLogging.info(clog, connectorMessage, () -> "all params GC: " + allParams);
+                    // Finds the value of the accountId parameter passed in from the tile, if not
+                    // found returns an empty string
+                    String accountID = allParams.getOrDefault("accountId", "");
+
+                    // Add the accountId parameter to our list of parameters to be returned
+                    kivaParams.put("accountId", accountID);
+
+                    // Finding the value of the filters parameter passed from the tile
+                    String strFilter = allParams.getOrDefault("filters", "");
+
+                    if (!strFilter.equals("")) {
+                        try {
+                            Map<String, String> filterMap = mapper.readValue(strFilter, new TypeReference<>() {
+                            });
+                            kivaParams.putAll(filterMap);
+
+                        } catch (Exception e) {
+                            clog.error(connectorMessage, "Could not get filters: " + e.getMessage());
+                        }
+
+                    }
+
+                    // Returns our list of parameters to pass into the kivapublic call
+                    return kivaParams;
+                })
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition retrieveUserBySocialWorkflow(RetrieveUserBySocialHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("retrieveUserBySocial")
+                .kivaMethod("getPartyBySSN")
+                .handler(handler)
+                .paramNames(List.of("ssn"))
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition retrieveUserByIdWorkflow(RetrieveUserByIdHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("retrieveUserById")
+                .kivaMethod("getPartyById")
+                .handler(handler)
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition retrieveTransactionCategoriesWorkflow(RetrieveTransactionCategoriesHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("retrieveTransactionCategories")
+                .kivaMethod("getTransactionCategories")
+                .handler(handler)
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition editTransactionWorkflow(EditTransactionHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("editTransaction")
+                .kivaMethod("updateTransaction")
+                .handler(handler)
+                .paramNames(List.of("accountId", "transactionId", "endUserTransCategory", "endUserTransNote",
+                        "endUserTransDescription"))
+                .invalidatesAccounts(true)
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition startTransferWorkflow(StartTransferHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("startTransfer")
+                .kivaMethod("createInternalTransfer")
+                .handler(handler)
+                .paramNames(TRANSFER_PARAMS)
+                .invalidatesAccounts(true)
+                .idempotent(true)
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition p2pTransferWorkflow(P2pTransferHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("p2pTransfer")
+                .kivaMethod("personToPersonTransfer")
+                .handler(handler)
+                .paramNames(TRANSFER_PARAMS)
+                .invalidatesAccounts(true)
+                .idempotent(true)
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition stopPaymentWorkflow(StopPaymentHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("stopPayment")
+                .kivaMethod("createStopPayment")
+                .handler(handler)
+                .paramNames(List.of("accountId", "holdDescription", "holdAmount", "checkNumber",
+                        "startCheckNumber", "endCheckNumber", "feeAccountId", "feeAmount", "feeAccountType"))
+                .invalidatesAccounts(true)
+                .idempotent(true)
+                .build();
+    }
+
+    @Bean
+    WorkflowDefinition validateMemberAccountInfoWorkflow(ValidateMemberAccountInfoHandler handler) {
+        return WorkflowDefinition.builder()
+                .name("validateMemberAccountInfo")
+                .kivaMethod("validateMemberAccountInfo")
+                .handler(handler)
+                .paramNames(List.of("memberId", "accountId", "firstThreeOfLastName"))
+                .sendEmptyParams(true)
+                .build();
+    }
+}
@@ -3,21 +3,17 @@ package coop.constellation.connectorservices.workflowexample.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
 import com.xtensifi.connectorservices.common.workflow.ConnectorState;
-import com.xtensifi.cufx.CustomData;
-import com.xtensifi.cufx.ValuePair;
 import com.xtensifi.dspco.ConnectorMessage;
-import com.xtensifi.dspco.ConnectorParametersResponse;
-import com.xtensifi.dspco.ExternalServicePayload;
 import com.xtensifi.dspco.ResponseStatusMessage;
 import coop.constellation.connectorservices.workflowexample.handlers.HandlerLogic;
 import coop.constellation.connectorservices.workflowexample.handlers.WorkflowHandlerLogic;
+import coop.constellation.connectorservices.workflowexample.helpers.ConnectorParams;
+import coop.constellation.connectorservices.workflowexample.helpers.ResponseComposer;
 import lombok.NonNull;
-import org.apache.commons.text.StringEscapeUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -94,24 +90,40 @@ public class ConnectorControllerBase {
     }
 
     public Function<ConnectorState, ConnectorState> handleResponseEntity(WorkflowHandlerLogic handler) {
-        return connectorState -> {
-            ConnectorMessage connectorMessage = connectorState.getConnectorMessage();
-            clog.info(connectorMessage, "inside handle response entity");
+        return connectorState -> handleResponseEntity(handler, getAllParams(connectorState.getConnectorMessage()))
+                .apply(connectorState);
+    }
 
-            final Map<String, String> allParams = getAllParams(connectorMessage);
+    /**
+     * @param allParams the params of the request, as built once at ingress
+     */
+    public Function<ConnectorState, ConnectorState> handleResponseEntity(WorkflowHandlerLogic handler,
+            Map<String, String> allParams) {
+        return connectorState -> handleResponse(handler, allParams, connectorState);
+    }
 
-            String response = "{}";
-            try {
-                response = handler.generateResponse(allParams, connectorState);
-                clog.info(connectorMessage, "this is the final response " + response);
+    /**
+     * Runs the handler and sets its enveloped response on the connector state.
+     */
+    ConnectorState handleResponse(WorkflowHandlerLogic handler, Map<String, String> allParams,
+            ConnectorState connectorState) {
+        ConnectorMessage connectorMessage = connectorState.getConnectorMessage();
+        clog.info(connectorMessage, "inside handle response entity");
+
+        // the handler writes its payload straight into the envelope, so a large kiva
+        // response is only copied once on its way to the final String
+        String response;
+        try {
+            response = ResponseComposer.envelope(out -> handler.writeResponse(allParams, connectorState, out));
+            clog.info(connectorMessage, "this is the final response, " + response.length() + " characters");
 
-            } catch (Exception e) {
-                clog.error(connectorState.getConnectorMessage(), e.getMessage());
-            }
+        } catch (Exception e) {
+            clog.error(connectorState.getConnectorMessage(), e.getMessage());
+            response = "{\"response\": {}}";
+        }
 
-            connectorState.setResponse("{\"response\": " + response + "}");
-            return connectorState;
-        };
+        connectorState.setResponse(response);
+        return connectorState;
     }
 
     ConnectorMessage getErrorResponse(@NonNull final String connectorJson, @NonNull final String message)
@@ -132,32 +144,14 @@ public class ConnectorControllerBase {
     /**
      * Get all the value pairs out of the connector message.
      * NOTE: if a name occurs more than once, only the first occurrance is returned.
+     * Prefer building this once per request and passing it along, each call
+     * builds a new view.
      * 
      * @param connectorMessage the request connector message
-     * @return a Map of the value pairs
+     * @return a read-only Map of the value pairs
      */
     public static Map<String, String> getAllParams(final ConnectorMessage connectorMessage) {
-        final Map<String, String> allParams = new HashMap<>();
-        final ExternalServicePayload externalServicePayload = connectorMessage.getExternalServicePayload();
-        final ConnectorParametersResponse connectorParametersResponse = connectorMessage
-                .getConnectorParametersResponse();
-
-        if (externalServicePayload != null) {
-            final CustomData methodParams = externalServicePayload.getPayload();
-            if (methodParams != null)
-                for (ValuePair valuePair : methodParams.getValuePair()) {
-                    allParams.putIfAbsent(valuePair.getName(), StringEscapeUtils.unescapeHtml4(valuePair.getValue()));
-                }
-        }
-        if (connectorParametersResponse != null) {
-            final CustomData otherParams = connectorParametersResponse.getParameters();
-            if (otherParams != null) {
-                for (ValuePair valuePair : otherParams.getValuePair()) {
-                    allParams.putIfAbsent(valuePair.getName(), StringEscapeUtils.unescapeHtml4(valuePair.getValue()));
-                }
-            }
-        }
-        return allParams;
+        return ConnectorParams.of(connectorMessage);
     }
 
 }
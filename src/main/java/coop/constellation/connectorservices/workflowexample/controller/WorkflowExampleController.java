@@ -1,11 +1,17 @@
 package coop.constellation.connectorservices.workflowexample.controller;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -17,33 +23,37 @@ import com.xtensifi.connectorservices.common.events.RealtimeEventService;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
 import com.xtensifi.connectorservices.common.workflow.ConnectorHubService;
 import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
-import com.xtensifi.connectorservices.common.workflow.ConnectorRequestParams;
 import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
 import com.xtensifi.connectorservices.common.workflow.ConnectorState;
 import com.xtensifi.dspco.ConnectorMessage;
 
-import coop.constellation.connectorservices.workflowexample.handlers.EditTransactionHandler;
 import coop.constellation.connectorservices.workflowexample.handlers.MultiCallHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.P2pTransferHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.RetrieveAccountListHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.RetrieveAccountListRefreshHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.RetrieveTransactionCategoriesHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.RetrieveTransactionListHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.RetrieveUserByIdHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.RetrieveUserBySocialHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.StartTransferHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.StopPaymentHandler;
-import coop.constellation.connectorservices.workflowexample.handlers.ValidateMemberAccountInfoHandler;
+import coop.constellation.connectorservices.workflowexample.helpers.Deadline;
+import coop.constellation.connectorservices.workflowexample.helpers.KivaRequest;
+import coop.constellation.connectorservices.workflowexample.helpers.LazyLogging;
 import coop.constellation.connectorservices.workflowexample.helpers.RealtimeEvents;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowExecutors;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowRejectedException;
+import coop.constellation.connectorservices.workflowexample.service.AdmissionController;
+import coop.constellation.connectorservices.workflowexample.service.KivaCallService;
+import coop.constellation.connectorservices.workflowexample.service.StageTimings;
+import coop.constellation.connectorservices.workflowexample.service.TenantScheduler;
+import coop.constellation.connectorservices.workflowexample.service.WorkflowDrain;
+import coop.constellation.connectorservices.workflowexample.service.WorkflowRegistry;
+import coop.constellation.connectorservices.workflowexample.service.WorkflowTimeouts;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -67,20 +77,23 @@ public class WorkflowExampleController extends ConnectorControllerBase {
     private final ObjectMapper mapper;
     private final RealtimeEventService realtimeEventService;
     private final RealtimeEvents realtimeEvents;
+    private final WorkflowExecutors workflowExecutors;
+    private final KivaCallService kivaCallService;
+    private final StageTimings stageTimings;
+    private final WorkflowTimeouts workflowTimeouts;
+    private final WorkflowRegistry workflowRegistry;
+    private final AdmissionController admissionController;
+    private final TenantScheduler tenantScheduler;
+    private final WorkflowDrain workflowDrain;
+    private final List<StatsSupplier> statsSuppliers;
+
+    @Value("${workflow.multicall.fanout-limit:5}")
+    private int multiCallFanoutLimit;
 
-    private final RetrieveAccountListRefreshHandler retrieveAccountListRefreshHandler;
-    private final RetrieveAccountListHandler retrieveAccountListHandler;
-    private final RetrieveTransactionListHandler retrieveTransactionListHandler;
-    private final RetrieveUserBySocialHandler retrieveUserBySocialHandler;
-    private final RetrieveUserByIdHandler retrieveUserByIdHandler;
-    private final RetrieveTransactionCategoriesHandler retrieveTransactionCategoriesHandler;
-    private final EditTransactionHandler editTransactionsHandler;
-    private final StartTransferHandler startTransferHandler;
-    private final P2pTransferHandler p2pTransferHandler;
-    private final StopPaymentHandler stopPaymentHandler;
-    private final ValidateMemberAccountInfoHandler validateMemberAccountInfoHandler;
     private final MultiCallHandler multiCallHandler;
 
+    private final Map<String, WorkflowPipeline> pipelines = new HashMap<>();
+
     /**
      * This method is required in order for your controller to pass health checks.
      * If the server cannot call awsping and get the expected response your app will
@@ -94,482 +107,195 @@ public class WorkflowExampleController extends ConnectorControllerBase {
         return "{ping: 'pong'}";
     }
 
-    // region retrieveAccountList
-
-    // Workflow methods return a ResponseEntity
+    /**
+     * Readiness probe: 200 while the service takes workflow requests, 503 once
+     * it has begun draining for shutdown. The body reports the drain's progress.
+     */
     @CrossOrigin
-    @PostMapping(path = "/retrieveAccountListRefresh", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> retrieveAccountListRefresh(@RequestBody final ConnectorMessage connectorMessage) {
-        clog.info(connectorMessage, connectorMessage.toString());
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .executeConnector(connectorMessage, new ConnectorRequestData("kivapublic", "1.0", "getAccountsRefresh"))
-                .thenApply(this.handleResponseEntity(retrieveAccountListRefreshHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running retrieveAccountList: " + exception.getMessage()));
-
-        return responseEntity.build();
-
+    @GetMapping(path = "/ready", produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getReady() {
+        return ResponseEntity.status(workflowDrain.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                .body(workflowDrain.get());
     }
 
+    /**
+     * Reports the gauges and counters of every StatsSupplier bean, e.g. executor
+     * queue depth and active threads per workflow method.
+     */
     @CrossOrigin
-    @PostMapping(path = "/retrieveAccountList", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> retrieveAccountList(@RequestBody final ConnectorMessage connectorMessage) {
-        clog.info(connectorMessage, connectorMessage.toString());
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "getAccounts"))
-                .thenApply(this.retrieveFilterAcctParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(retrieveAccountListHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running retrieveAccountList: " + exception.getMessage()));
-
-        return responseEntity.build();
-
-    }
-
-    private Function<ConnectorRequestParams, ConnectorRequestParams> retrieveFilterAcctParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            // Gets a list of all paramters passed into your connector call
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            clog.info(connectorMessage, "all params GC: " + allParams);
-
-            // Finding the value of the filters parameter passed from the tile
-            String strFilter = allParams.getOrDefault("filters", "");
-
-            if (!strFilter.equals("")) {
-                connectorRequestParams.addNameValue("accountFilter", strFilter);
-            }
-
-            // Returns our list of parameters to pass into the kivapublic call
-            return connectorRequestParams;
-        };
+    @GetMapping(path = "/stats", produces = APPLICATION_JSON_VALUE)
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        statsSuppliers.forEach(statsSupplier -> stats.put(statsSupplier.getName(), statsSupplier.get()));
+        return stats;
     }
-    // endregion
-
-    // region retrieveTransactionList
-
-    // Workflow methods return a ResponseEntity
 
+    /**
+     * Reports latency percentiles per workflow method and pipeline stage, with
+     * the time stages spent queued for an executor thread apart from the time they
+     * ran.
+     */
     @CrossOrigin
-    @PostMapping(path = "/retrieveTransactionList", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> retrieveTransactionList(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "getTransactions"))
-                .thenApply(this.retrieveTransactionParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(retrieveTransactionListHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running retrieveTransactionList: " + exception.getMessage()));
-
-        return responseEntity.build();
-
-    }
-
-    /* Get the accountID and transaction filters passed in */
-    private Function<ConnectorRequestParams, ConnectorRequestParams> retrieveTransactionParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            // Gets a list of all paramters passed into your connector call
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            clog.info(connectorMessage, "all params GC: " + allParams);
-            // Finds the value of the accountId parameter passed in from the tile, if not
-            // found returns an empty string
-            String accountID = allParams.getOrDefault("accountId", "");
-
-            if (!accountID.isEmpty() || accountID != null) {
-                // Add the accountId parameter to our list of parameters to be returned
-                connectorRequestParams.addNameValue("accountId", accountID);
-            }
-
-            // Finding the value of the filters parameter passed from the tile
-            String strFilter = allParams.getOrDefault("filters", "");
-
-            if (!strFilter.equals("")) {
-                try {
-                    Map<String, String> filterMap = mapper.readValue(strFilter, new TypeReference<>() {
-                    });
-                    filterMap.entrySet().stream()
-                            .forEach((entry) -> connectorRequestParams.addNameValue(entry.getKey(), entry.getValue()));
-
-                } catch (Exception e) {
-                    clog.error(connectorMessage, "Could not get filters: " + e.getMessage());
-                }
-
-            }
-
-            // Returns our list of parameters to pass into the kivapublic call
-            return connectorRequestParams;
-        };
+    @GetMapping(path = "/stageTimings", produces = APPLICATION_JSON_VALUE)
+    public Map<String, Object> getStageTimings() {
+        return stageTimings.snapshot();
     }
-    // endregion
 
-    // region retrieveUserBySocial
-
-    // Workflow methods return a ResponseEntity
+    // region workflow methods
 
+    /**
+     * Runs the single kiva call workflow method registered under the path's last
+     * segment, see WorkflowDefinitionsConfig. Methods with their own mapping, such
+     * as multiCall, take precedence.
+     */
     @CrossOrigin
-    @PostMapping(path = "/retrieveUserBySocial", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> retrieveUserBySocial(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "getPartyBySSN"))
-                .thenApply(this.retrieveUserBySocialParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(retrieveUserBySocialHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running retrieveUserBySocial: " + exception.getMessage()));
-
-        return responseEntity.build();
-
+    @PostMapping(path = "/{workflowMethod}", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<String> runWorkflow(@PathVariable final String workflowMethod,
+            @RequestBody final ConnectorMessage connectorMessage) {
+        WorkflowPipeline pipeline = pipelines.get(workflowMethod);
+        if (pipeline == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        LazyLogging.info(clog, connectorMessage, connectorMessage::toString);
+        return start(workflowMethod, connectorMessage,
+                () -> pipeline.run(connectorMessage, getAllParams(connectorMessage)));
     }
 
-    /* Get the ssn passed in */
-    private Function<ConnectorRequestParams, ConnectorRequestParams> retrieveUserBySocialParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            clog.info(connectorMessage, "all params GC: " + allParams);
-            String SSN = allParams.getOrDefault("ssn", "");
-
-            if (!SSN.equals("")) {
-                connectorRequestParams.addNameValue("ssn", SSN);
+    /**
+     * Admits the pipeline and queues it behind the other work of the request's
+     * org, see TenantScheduler. It is tracked until it completes, so shutdown can
+     * wait for it, see WorkflowDrain.
+     */
+    private ResponseEntity<String> start(String workflowMethod, ConnectorMessage connectorMessage,
+            Supplier<CompletableFuture<ConnectorMessage>> pipeline) {
+        if (!workflowDrain.isAccepting()) {
+            return reject(workflowMethod, connectorMessage, HttpStatus.SERVICE_UNAVAILABLE,
+                    "the service is shutting down");
+        }
+        String org = Objects.toString(ConnectorRequestData.getConnectorParam("org", connectorMessage), "");
+        try {
+            if (!admissionController.runIfAdmitted(workflowMethod, () -> workflowDrain.track(workflowMethod,
+                    connectorMessage, tenantScheduler.submit(org, pipeline)))) {
+                return reject(workflowMethod, connectorMessage, HttpStatus.TOO_MANY_REQUESTS,
+                        "too many requests in flight");
             }
+        } catch (WorkflowRejectedException e) {
+            return reject(workflowMethod, connectorMessage, HttpStatus.TOO_MANY_REQUESTS,
+                    "too many requests queued for its org");
+        }
 
-            return connectorRequestParams;
-        };
-    }
-
-    // // endregion
-
-    // // region retrieveUserById
-
-    // // Workflow methods return a ResponseEntity
-
-    @CrossOrigin
-    @PostMapping(path = "/retrieveUserById", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> retrieveUserById(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .executeConnector(connectorMessage, new ConnectorRequestData("kivapublic", "1.0", "getPartyById"))
-                .thenApply(this.handleResponseEntity(retrieveUserByIdHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running retrieveUserById: " + exception.getMessage()));
-
-        return responseEntity.build();
-
-    }
-    // // endregion
-
-    // // region retrieveTransactionCategories
-
-    // // Workflow methods return a ResponseEntity
-
-    @CrossOrigin
-    @PostMapping(path = "/retrieveTransactionCategories", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> retrieveTransactionCategories(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .executeConnector(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "getTransactionCategories"))
-                .thenApply(this.handleResponseEntity(retrieveTransactionCategoriesHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running retrieveTransactionCategories: " + exception.getMessage()));
-
-        return responseEntity.build();
-
-    }
-    // // endregion
-
-    // // region editTransaction
-
-    // // Workflow methods return a ResponseEntity
-
-    @CrossOrigin
-    @PostMapping(path = "/editTransaction", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> editTransaction(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "updateTransaction"))
-                .thenApply(this.getEditTransactionParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(editTransactionsHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running editTransaction: " + exception.getMessage()));
-
-        return responseEntity.build();
-
-    }
-
-    private Function<ConnectorRequestParams, ConnectorRequestParams> getEditTransactionParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            clog.info(connectorMessage, "all params GC: " + allParams);
-
-            List<String> paramNames = List.of("accountId", "transactionId", "endUserTransCategory", "endUserTransNote",
-                    "endUserTransDescription");
-
-            return createConnectorRequestParams(connectorRequestParams, allParams, paramNames);
-        };
-    }
-    // // endregion
-
-    // // region startTransfer
-
-    // // Workflow methods return a ResponseEntity
-
-    @CrossOrigin
-    @PostMapping(path = "/startTransfer", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> startTransfer(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "createInternalTransfer"))
-                .thenApply(this.getStartTransferParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(startTransferHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running startTransfer: " + exception.getMessage()));
-
-        return responseEntity.build();
-
+        // Workflow methods return a ResponseEntity
+        return ResponseEntity.status(HttpStatus.OK).build();
     }
 
-    private Function<ConnectorRequestParams, ConnectorRequestParams> getStartTransferParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            clog.info(connectorMessage, "all params GC: " + allParams);
-
-            List<String> paramNames = List.of("accountFrom", "accountTo", "transferAmount", "transferMemo",
-                    "occurrenceFromAccountType", "occurrenceToAccountType", "paymentType");
-
-            return createConnectorRequestParams(connectorRequestParams, allParams, paramNames);
-        };
+    /**
+     * Answers a request turned away at ingress: with the given status, or with
+     * 200 and the usual error completion, so the hub isn't left waiting on it.
+     */
+    private ResponseEntity<String> reject(String workflowMethod, ConnectorMessage connectorMessage,
+            HttpStatus status, String reason) {
+        String message = workflowMethod + " rejected, " + reason;
+        clog.warn(connectorMessage, message);
+        if (admissionController.getRejection() == AdmissionController.Rejection.TOO_MANY_REQUESTS) {
+            return ResponseEntity.status(status).build();
+        }
+        try {
+            connectorHubService.handleAsyncFlowError(new WorkflowRejectedException(message), connectorMessage,
+                    "Error running " + workflowMethod + ": " + message);
+        } catch (RuntimeException e) {
+            // handleAsyncFlowError rethrows once it has reported the error, as it does for pipelines
+        }
+        return ResponseEntity.status(HttpStatus.OK).build();
     }
-    // // endregion
-
-    // // region p2pTransfer
-    @CrossOrigin
-    @PostMapping(path = "/p2pTransfer", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> p2pTransfer(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "personToPersonTransfer"))
-                .thenApply(this.getP2pTransferParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(p2pTransferHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running p2pTransfer: " + exception.getMessage()));
-
-        return responseEntity.build();
 
+    /* Compiles every registered workflow method once, before requests arrive */
+    @PostConstruct
+    void compilePipelines() {
+        workflowRegistry.getDefinitions().forEach(definition -> pipelines.put(definition.getName(),
+                new WorkflowPipeline(definition, this, connectorHubService, kivaCallService, workflowTimeouts,
+                        workflowDrain, workflowExecutors, stageTimings)));
     }
 
-    private Function<ConnectorRequestParams, ConnectorRequestParams> getP2pTransferParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            clog.info(connectorMessage, "all params GC: " + allParams);
-
-            List<String> paramNames = List.of("accountFrom", "accountTo", "transferAmount", "transferMemo",
-                    "occurrenceFromAccountType", "occurrenceToAccountType", "paymentType");
+    // endregion
 
-            return createConnectorRequestParams(connectorRequestParams, allParams, paramNames);
-        };
-    }
-    // // endregion
 
-    // // region stopPayment
     @CrossOrigin
-    @PostMapping(path = "/stopPayment", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> stopPayment(@RequestBody final ConnectorMessage connectorMessage) {
-
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "createStopPayment"))
-                .thenApply(this.getStopPaymentParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(stopPaymentHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running stopPayment: " + exception.getMessage()));
-
-        return responseEntity.build();
-
-    }
-
-    private Function<ConnectorRequestParams, ConnectorRequestParams> getStopPaymentParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            clog.info(connectorMessage, "all params GC: " + allParams);
-
-            List<String> paramNames = List.of("accountId", "holdDescription", "holdAmount", "checkNumber",
-                    "startCheckNumber", "endCheckNumber", "feeAccountId", "feeAmount", "feeAccountType");
-
-            return createConnectorRequestParams(connectorRequestParams, allParams, paramNames);
-        };
+    @PostMapping(path = "/multiCall", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<String> multiCall(@RequestBody final ConnectorMessage connectorMessage) {
+        return start("multiCall", connectorMessage, () -> runMultiCall(connectorMessage));
     }
-    // // endregion
-
-    // region Validate Member Account Info
-    @CrossOrigin
-    @PostMapping(path = "/validateMemberAccountInfo", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> validateMemberAccountInfo(@RequestBody final ConnectorMessage connectorMessage)
-            throws JsonProcessingException {
-        clog.info(connectorMessage, mapper.writeValueAsString(connectorMessage));
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .initAsyncConnectorRequest(connectorMessage,
-                        new ConnectorRequestData("kivapublic", "1.0", "validateMemberAccountInfo"))
-                .thenApply(this.getValidateMemberAccountInfoParams(connectorMessage))
-                .thenApply(connectorHubService.callConnectorAsync())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(validateMemberAccountInfoHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running retrieveAccountList: " + exception.getMessage()));
-
-        return responseEntity.build();
 
+    private CompletableFuture<ConnectorMessage> runMultiCall(ConnectorMessage connectorMessage) {
+        final Map<String, String> allParams = getAllParams(connectorMessage);
+
+        Executor executor = workflowExecutors.get("multiCall");
+        StageTimings.Stages stages = stageTimings.forMethod("multiCall");
+        Deadline deadline = workflowTimeouts.start("multiCall");
+        Function<ConnectorState, ConnectorMessage> complete = connectorHubService.completeAsync();
+        KivaRequest accountsRequest = KivaRequest.of(connectorMessage, "getAccounts", Map.of());
+        CompletableFuture<ConnectorState> merged = kivaCallService
+                .call(connectorMessage, accountsRequest, executor, stages, deadline)
+                .thenApply(stages.time("accountIds", this::getMultiCallAccountIds))
+                .thenCompose(accountIds -> invokeCompletableFutures(
+                        getTransactionsForAccounts(connectorMessage, accountIds, executor, stages, deadline),
+                        connectorMessage, executor, stages));
+        return workflowTimeouts.within(merged, deadline, "merge", executor)
+                .thenApply(stages.time("handler", this.handleResponseEntity(multiCallHandler, allParams)))
+                .thenApplyAsync(stages.time("complete", (ConnectorState connectorState) ->
+                        workflowDrain.mayComplete(connectorMessage) ? complete.apply(connectorState) : connectorMessage),
+                        executor)
+                .exceptionally(exception -> workflowDrain.mayComplete(connectorMessage)
+                        ? connectorHubService.handleAsyncFlowError(exception, connectorMessage,
+                                "Error running multiCall: " + exception.getMessage())
+                        : connectorMessage);
     }
 
-    private Function<ConnectorRequestParams, ConnectorRequestParams> getValidateMemberAccountInfoParams(
-            ConnectorMessage connectorMessage) {
-
-        return connectorRequestParams -> {
-            final Map<String, String> allParams = getAllParams(connectorMessage);
-
-            List<String> paramList = List.of("memberId", "accountId", "firstThreeOfLastName");
-
-            for (String paramName : paramList) {
-                String paramValue = allParams.getOrDefault(paramName, "");
-                connectorRequestParams.addNameValue(paramName, paramValue);
-            }
+    /* Get the id of every deposit account returned by getAccounts */
+    private List<String> getMultiCallAccountIds(ConnectorState connectorState) {
+        ConnectorMessage connectorMessage = connectorState.getConnectorMessage();
+        List<ConnectorResponse> responseList = connectorState.getConnectorResponseList().getResponses();
+        List<String> accountIds = new ArrayList<>();
+        // This example is only expecting 1 response
+        if (responseList.size() == 1) {
+            clog.info(connectorMessage, "Start Parsing");
 
+            String response = responseList.get(0).getResponse();
             try {
-                clog.info(connectorMessage, "all params GC: " + mapper.writeValueAsString(allParams));
-                clog.info(connectorMessage, "connector request params for validate member account info: "
-                        + mapper.writeValueAsString(connectorRequestParams));
-                clog.info(connectorMessage,
-                        "this is the connector message: " + mapper.writeValueAsString(connectorMessage));
-            } catch (JsonProcessingException e) {
-                // do nothing
+                JsonNode component = mapper.readTree(response);
+                JsonNode depositArray = component.at("/accountContainer/depositMessage/depositList/deposit");
+                for (JsonNode deposit : depositArray) {
+                    String accountId = deposit.path("accountId").asText("");
+                    if (!accountId.isEmpty()) {
+                        accountIds.add(accountId);
+                    }
+                }
+            } catch (Exception e) {
+                clog.error(connectorMessage, "failed to get accountid");
             }
-
-            return connectorRequestParams;
-        };
-    }
-
-    // // endregion
-
-    @CrossOrigin
-    @PostMapping(path = "/multiCall", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<String> multiCall(@RequestBody final ConnectorMessage connectorMessage) {
-        ResponseEntity.BodyBuilder responseEntity = ResponseEntity.status(HttpStatus.OK);
-
-        connectorHubService
-                .executeConnector(connectorMessage, new ConnectorRequestData("kivapublic", "1.0", "getAccounts"))
-                .thenApplyAsync(connectorState -> connectorHubService.prepareNextConnector(
-                        new ConnectorRequestData("kivapublic", "1.0", "getTransactions"), connectorState))
-                .thenApply(this.getMultiCallParams())
-                .thenApplyAsync(connectorHubService.callConnectorUsingState())
-                .thenApplyAsync(connectorHubService.waitForConnectorResponse())
-                .thenApply(this.handleResponseEntity(multiCallHandler))
-                .thenApplyAsync(connectorHubService.completeAsync())
-                .exceptionally(exception -> connectorHubService.handleAsyncFlowError(exception, connectorMessage,
-                        "Error running multiCall: " + exception.getMessage()));
-
-        return responseEntity.build();
+        }
+        clog.info(connectorMessage, "multiCall fetching transactions for " + accountIds.size() + " accounts");
+        return accountIds;
     }
 
-    private Function<ConnectorState, ConnectorState> getMultiCallParams() {
-        return connectorState -> {
-            ConnectorMessage connectorMessage = connectorState.getConnectorMessage();
-            List<ConnectorResponse> responseList = connectorState.getConnectorResponseList().getResponses();
-            // This example is only expecting 1 response
-            if (responseList.size() == 1) {
-                clog.info(connectorState.getConnectorMessage(), "Start Parsing");
-
-                String response = responseList.get(0).getResponse();
-                clog.info(connectorState.getConnectorMessage(), response);
-
-                ObjectMapper jsonMap = new ObjectMapper();
-                String accountID = "";
-                try {
-                    JsonNode component = jsonMap.readTree(response);
-                    JsonNode depositArray = component.at("/accountContainer/depositMessage/depositList/deposit");
-                    clog.info(connectorState.getConnectorMessage(), depositArray.toString());
-                    accountID = depositArray.get(1).get("accountId").asText();
-                } catch (Exception e) {
-                    clog.error(connectorMessage, "failed to get accountid");
-                }
-                // add accountId as param for the getTransactions call
-                connectorState.getConnectorRequestParams().addNameValue("accountId", accountID);
-            }
-            return connectorState;
-        };
+    /**
+     * Starts a getTransactions call for every account. At most
+     * multiCallFanoutLimit calls are in flight: each call past the limit starts
+     * when the call that many positions ahead of it finishes.
+     */
+    private List<CompletableFuture<ConnectorState>> getTransactionsForAccounts(ConnectorMessage connectorMessage,
+            List<String> accountIds, Executor executor, StageTimings.Stages stages, Deadline deadline) {
+        int limit = Math.max(1, multiCallFanoutLimit);
+        List<CompletableFuture<ConnectorState>> futures = new ArrayList<>(accountIds.size());
+        for (int i = 0; i < accountIds.size(); i++) {
+            String accountId = accountIds.get(i);
+            CompletableFuture<?> slot = i < limit ? CompletableFuture.completedFuture(null)
+                    : futures.get(i - limit).handle((connectorState, exception) -> null);
+            KivaRequest kivaRequest = KivaRequest.of(connectorMessage, "getTransactions",
+                    Map.of(ACCOUNT_ID, accountId));
+            futures.add(slot.thenCompose(
+                    ignored -> kivaCallService.call(connectorMessage, kivaRequest, executor, stages, deadline)));
+        }
+        return futures;
     }
 
     /**
@@ -578,31 +304,30 @@ public class WorkflowExampleController extends ConnectorControllerBase {
      * a new connector state future that contains all of their responses.
      */
     public CompletableFuture<ConnectorState> invokeCompletableFutures(
-            List<CompletableFuture<ConnectorState>> completableFutures, ConnectorMessage connectorMessage) {
+            List<CompletableFuture<ConnectorState>> completableFutures, ConnectorMessage connectorMessage,
+            Executor executor, StageTimings.Stages stages) {
         return CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[0]))
 
                 // Since we can't work with CompletableFuture<Void> we need to map the response
                 // data to a list of ConnectorStates
-                .thenApplyAsync((future) -> completableFutures.stream().map(completableFuture -> {
-                    ConnectorState cs;
-                    try {
-                        cs = completableFuture.get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        clog.error(connectorMessage,
-                                "error getting the completable future " + ExceptionUtils.getStackTrace(e));
-                        throw new RuntimeException("Error getting the completable future");
-                    }
-                    return cs;
-                }).collect(Collectors.toList()))
+                .thenApplyAsync(stages.time("collect",
+                        (Void future) -> completableFutures.stream().map(completableFuture -> {
+                            ConnectorState cs;
+                            try {
+                                cs = completableFuture.get();
+                            } catch (InterruptedException | ExecutionException e) {
+                                clog.error(connectorMessage,
+                                        "error getting the completable future " + ExceptionUtils.getStackTrace(e));
+                                throw new RuntimeException("Error getting the completable future");
+                            }
+                            return cs;
+                        }).collect(Collectors.toList())), executor)
 
                 // And then we have to get the connector response lists from the connector
                 // states
-                .thenApplyAsync((connectorStates) -> {
+                .thenApplyAsync(stages.time("merge", (List<ConnectorState> connectorStates) -> {
                     List<List<ConnectorResponse>> responsesLists = connectorStates.stream().map(cs -> {
-                        try {
-                            clog.info(connectorMessage, "this is the connector state " + mapper.writeValueAsString(cs));
-                        } catch (JsonProcessingException e) {
-                        }
+                        LazyLogging.info(clog, connectorMessage, () -> "this is the connector state " + toJson(cs));
                         List<ConnectorResponse> cmResponses = cs.getConnectorResponseList().getResponses();
 
                         return cmResponses;
@@ -614,7 +339,7 @@ public class WorkflowExampleController extends ConnectorControllerBase {
                     // responses into a flat list on this connector state.
                     responsesLists.forEach(responsesList -> responsesList.forEach(cs::addResponse));
                     return cs;
-                });
+                }), executor);
     }
     // endregion
 
@@ -658,15 +383,12 @@ public class WorkflowExampleController extends ConnectorControllerBase {
     //endregion
 
 
-    private ConnectorRequestParams createConnectorRequestParams(ConnectorRequestParams connectorRequestParams,
-            Map<String, String> allParams, List<String> paramNames){
-        for (String name : paramNames) {
-            String param = allParams.getOrDefault(name, "");
-            if (!param.isEmpty()) {
-                connectorRequestParams.addNameValue(name, param);
-            }
+    /* Serializes an object for logging, an unserializable object is logged as its error */
+    private String toJson(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            return "could not serialize " + value.getClass().getSimpleName() + ": " + e.getMessage();
         }
-        return connectorRequestParams;
-    }    
-
-}
\ No newline at end of file
+    }
+}
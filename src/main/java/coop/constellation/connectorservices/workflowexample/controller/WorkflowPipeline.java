@@ -0,0 +1,107 @@
+package coop.constellation.connectorservices.workflowexample.controller;
+
+import com.xtensifi.connectorservices.common.workflow.ConnectorHubService;
+import com.xtensifi.connectorservices.common.workflow.ConnectorState;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.handlers.WorkflowHandlerLogic;
+import coop.constellation.connectorservices.workflowexample.helpers.Deadline;
+import coop.constellation.connectorservices.workflowexample.helpers.IdempotencyKey;
+import coop.constellation.connectorservices.workflowexample.helpers.KivaRequest;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowDefinition;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowExecutors;
+import coop.constellation.connectorservices.workflowexample.service.KivaCallService;
+import coop.constellation.connectorservices.workflowexample.service.StageTimings;
+import coop.constellation.connectorservices.workflowexample.service.WorkflowDrain;
+import coop.constellation.connectorservices.workflowexample.service.WorkflowTimeouts;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static coop.constellation.connectorservices.workflowexample.helpers.Constants.*;
+
+/**
+ * A workflow definition compiled once at startup. The executor, the stage
+ * histograms and the timed handler and complete stages are looked up and
+ * wrapped here, so a request only builds its params and kiva request.
+ */
+final class WorkflowPipeline {
+
+    private final WorkflowDefinition definition;
+    private final ConnectorHubService connectorHubService;
+    private final KivaCallService kivaCallService;
+    private final WorkflowTimeouts workflowTimeouts;
+    private final WorkflowDrain workflowDrain;
+    private final Executor executor;
+    private final StageTimings.Stages stages;
+    private final BiFunction<Map<String, String>, ConnectorState, ConnectorState> handlerStage;
+    private final Function<ConnectorState, ConnectorMessage> completeStage;
+    private final String errorPrefix;
+
+    WorkflowPipeline(WorkflowDefinition definition, ConnectorControllerBase controller,
+            ConnectorHubService connectorHubService, KivaCallService kivaCallService,
+            WorkflowTimeouts workflowTimeouts, WorkflowDrain workflowDrain, WorkflowExecutors workflowExecutors,
+            StageTimings stageTimings) {
+        this.definition = definition;
+        this.connectorHubService = connectorHubService;
+        this.kivaCallService = kivaCallService;
+        this.workflowTimeouts = workflowTimeouts;
+        this.workflowDrain = workflowDrain;
+        this.executor = workflowExecutors.get(definition.getName());
+        this.stages = stageTimings.forMethod(definition.getName());
+        WorkflowHandlerLogic handler = definition.getHandler();
+        this.handlerStage = stages.time("handler", (Map<String, String> allParams,
+                ConnectorState connectorState) -> controller.handleResponse(handler, allParams, connectorState));
+        this.completeStage = stages.time("complete", connectorHubService.completeAsync());
+        this.errorPrefix = "Error running " + definition.getName() + ": ";
+    }
+
+    /**
+     * Starts the workflow for the request; it completes the connector message
+     * asynchronously, or fails it once the method's deadline passes, unless the
+     * shutdown drain has already failed it.
+     */
+    CompletableFuture<ConnectorMessage> run(ConnectorMessage connectorMessage, Map<String, String> allParams) {
+        Deadline deadline = workflowTimeouts.start(definition.getName());
+        List<String> touchedAccounts = definition.isInvalidatesAccounts() ? getTouchedAccounts(allParams) : null;
+        if (touchedAccounts != null) {
+            kivaCallService.invalidate(connectorMessage, touchedAccounts);
+        }
+        KivaRequest kivaRequest = KivaRequest.of(connectorMessage, definition.getKivaMethod(),
+                definition.kivaParams(connectorMessage, allParams));
+        CompletableFuture<ConnectorState> call = definition.isIdempotent()
+                ? kivaCallService.callIdempotent(connectorMessage, kivaRequest,
+                        IdempotencyKey.of(definition.getName(), connectorMessage, allParams, kivaRequest.getParams()),
+                        executor, stages, deadline)
+                : kivaCallService.call(connectorMessage, kivaRequest, executor, stages, deadline);
+        if (touchedAccounts != null) {
+            call = call.thenApply(connectorState -> {
+                // drop reads that raced with this write
+                kivaCallService.invalidate(connectorMessage, touchedAccounts);
+                return connectorState;
+            });
+        }
+        return call
+                .thenApply(connectorState -> {
+                    deadline.check("handler");
+                    return handlerStage.apply(allParams, connectorState);
+                })
+                .thenApplyAsync(connectorState -> workflowDrain.mayComplete(connectorMessage)
+                        ? completeStage.apply(connectorState)
+                        : connectorMessage, executor)
+                .exceptionally(exception -> workflowDrain.mayComplete(connectorMessage)
+                        ? connectorHubService.handleAsyncFlowError(exception, connectorMessage,
+                                errorPrefix + exception.getMessage())
+                        : connectorMessage);
+    }
+
+    /* Accounts a money movement or transaction edit changes */
+    private static List<String> getTouchedAccounts(Map<String, String> allParams) {
+        return List.of(allParams.getOrDefault(ACCOUNT_ID, ""), allParams.getOrDefault(FROM_ACCOUNT, ""),
+                allParams.getOrDefault(TO_ACCOUNT, ""));
+    }
+}
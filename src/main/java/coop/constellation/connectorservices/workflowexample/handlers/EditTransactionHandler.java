@@ -6,11 +6,13 @@ import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
 import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
 import com.xtensifi.connectorservices.common.workflow.ConnectorState;
 import com.xtensifi.dspco.ConnectorMessage;
 
+import coop.constellation.connectorservices.workflowexample.helpers.ResponseComposer;
 import lombok.RequiredArgsConstructor;
 
 @Service
@@ -22,10 +24,20 @@ public class EditTransactionHandler extends HandlerBase implements WorkflowHandl
     @Override
     public String generateResponse(final Map<String, String> parms, ConnectorState connectorState)
             throws IOException, ParseException {
+        String resp = ResponseComposer.toJson(out -> writeResponse(parms, connectorState, out));
+
+        // This is required, and is how you set the response for a workflow method
+        connectorState.setResponse(resp);
+        return resp;
+    }
+
+    @Override
+    public void writeResponse(final Map<String, String> parms, ConnectorState connectorState, JsonGenerator out)
+            throws IOException, ParseException {
         List<ConnectorResponse> connectorResponseList = connectorState.getConnectorResponseList().getResponses();
 
-        // This is how you capture the response
-        String resp = "{\"response\": 1}";
+        // This is a placeholder in case no responses are returned
+        String data = "1";
         for (ConnectorResponse connectorResponse : connectorResponseList) {
 
             // This is how you retrieve the name of the connector
@@ -33,16 +45,12 @@ public class EditTransactionHandler extends HandlerBase implements WorkflowHandl
             logger.info(connectorState.getConnectorMessage(), name);
 
             // This is how you capture the response
-            String data = connectorResponse.getResponse();
-
-            // Parse the response how ever you see fit
-            resp = "{\"response\": " + data + "}";
-            logger.info(connectorState.getConnectorMessage(), resp);
+            data = connectorResponse.getResponse();
         }
 
-        // This is required, and is how you set the response for a workflow method
-        connectorState.setResponse(resp);
-        return resp;
+        // Parse the response however you see fit, here the raw kiva JSON is copied
+        // straight into the response being built
+        writeResponseField(out, data);
     }
 
 
@@ -1,10 +1,12 @@
 package coop.constellation.connectorservices.workflowexample.handlers;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xtensifi.connectorservices.common.workflow.ConnectorRequestParams;
 import com.xtensifi.dspco.UserData;
 
@@ -38,4 +40,15 @@ public abstract class HandlerBase implements HandlerLogic {
         return connectorRequestParams;
     }
 
-}
\ No newline at end of file
+    /**
+     * Writes {"response": data} with the raw kiva JSON copied straight into the
+     * generator's output.
+     */
+    protected static void writeResponseField(JsonGenerator out, String data) throws IOException {
+        out.writeStartObject();
+        out.writeFieldName("response");
+        out.writeRawValue(data != null ? data : "null");
+        out.writeEndObject();
+    }
+
+}
@@ -6,10 +6,12 @@ import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
 import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
 import com.xtensifi.connectorservices.common.workflow.ConnectorState;
 import com.xtensifi.dspco.ConnectorMessage;
+import coop.constellation.connectorservices.workflowexample.helpers.ResponseComposer;
 import lombok.RequiredArgsConstructor;
 
 @Service
@@ -21,10 +23,23 @@ public class MultiCallHandler extends HandlerBase implements WorkflowHandlerLogi
     @Override
     public String generateResponse(final Map<String, String> parms, ConnectorState connectorState)
             throws IOException, ParseException {
+        String resp = ResponseComposer.toJson(out -> writeResponse(parms, connectorState, out));
+
+        // This is required, and is how you set the response for a workflow method
+        connectorState.setResponse(resp);
+        return resp;
+    }
+
+    @Override
+    public void writeResponse(final Map<String, String> parms, ConnectorState connectorState, JsonGenerator out)
+            throws IOException, ParseException {
         List<ConnectorResponse> connectorResponseList = connectorState.getConnectorResponseList().getResponses();
 
-        // This is how you capture the response
-        String resp = "{\"response\": 1}";
+        // multiCall merges one getTransactions response per account, so return them
+        // all as an array in account order
+        out.writeStartObject();
+        out.writeFieldName("response");
+        out.writeStartArray();
         for (ConnectorResponse connectorResponse : connectorResponseList) {
 
             // This is how you retrieve the name of the connector
@@ -32,16 +47,10 @@ public class MultiCallHandler extends HandlerBase implements WorkflowHandlerLogi
             logger.info(connectorState.getConnectorMessage(), name);
 
             // This is how you capture the response
-            String data = connectorResponse.getResponse();
-
-            // Parse the response how ever you see fit
-            resp = "{\"response\": " + data + "}";
-            logger.info(connectorState.getConnectorMessage(), resp);
+            out.writeRawValue(connectorResponse.getResponse());
         }
-
-        // This is required, and is how you set the response for a workflow method
-        connectorState.setResponse(resp);
-        return resp;
+        out.writeEndArray();
+        out.writeEndObject();
     }
 
 
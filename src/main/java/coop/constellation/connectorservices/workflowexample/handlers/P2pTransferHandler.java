@@ -6,14 +6,15 @@ import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
 import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
 import com.xtensifi.connectorservices.common.workflow.ConnectorState;
 import com.xtensifi.dspco.ConnectorMessage;
 import com.xtensifi.connectorservices.common.events.RealtimeEventService;
 import coop.constellation.connectorservices.workflowexample.helpers.RealtimeEvents;
+import coop.constellation.connectorservices.workflowexample.helpers.ResponseComposer;
 
-import coop.constellation.connectorservices.workflowexample.controller.ConnectorControllerBase;
 import static coop.constellation.connectorservices.workflowexample.helpers.Constants.*;
 import lombok.RequiredArgsConstructor;
 
@@ -28,13 +29,23 @@ public class P2pTransferHandler extends HandlerBase implements WorkflowHandlerLo
     @Override
     public String generateResponse(final Map<String, String> parms, ConnectorState connectorState)
             throws IOException, ParseException {
+        String resp = ResponseComposer.toJson(out -> writeResponse(parms, connectorState, out));
+
+        // This is required, and is how you set the response for a workflow method
+        connectorState.setResponse(resp);
+        return resp;
+    }
+
+    @Override
+    public void writeResponse(final Map<String, String> parms, ConnectorState connectorState, JsonGenerator out)
+            throws IOException, ParseException {
         // Gather the list of responses, when only making 1 kiva call there should only
         // be one response
         List<ConnectorResponse> connectorResponseList = connectorState.getConnectorResponseList().getResponses();
 
         // This is a placeholder incase no responses are returned, this should be
         // updated with a default message when responses are found
-        String resp = "{\"response\": 1}";
+        String data = "1";
         for (ConnectorResponse connectorResponse : connectorResponseList) {
             ConnectorMessage connectorMessage = connectorState.getConnectorMessage();
 
@@ -43,14 +54,14 @@ public class P2pTransferHandler extends HandlerBase implements WorkflowHandlerLo
             logger.info(connectorMessage, name);
 
             // This is how you capture the response
-            String data = connectorResponse.getResponse();
+            data = connectorResponse.getResponse();
 
             // check for a successful transfer
             // TODO
 
             // if successful, send an event
 
-            List<String> affectedItems = getFromAndToAccount(connectorMessage);
+            List<String> affectedItems = getFromAndToAccount(parms);
             try {
                 realtimeEvents.send(CDP_SOURCE, PLATFORM_ACCOUNT_TRANSACTION_ADDED, affectedItems, connectorMessage,
                         logger, realtimeEventService);
@@ -59,20 +70,15 @@ public class P2pTransferHandler extends HandlerBase implements WorkflowHandlerLo
                 logger.error(connectorMessage, "error sending realtime event ");
 
             }
-
-            // Parse the response however you see fit
-            resp = "{\"response\": " + data + "}";
-            logger.info(connectorMessage, resp);
         }
 
-        // This is required, and is how you set the response for a workflow method
-        connectorState.setResponse(resp);
-        return resp;
+        // Parse the response however you see fit, here the raw kiva JSON is copied
+        // straight into the response being built
+        writeResponseField(out, data);
     }
 
 
-    protected List<String> getFromAndToAccount(ConnectorMessage connectorMessage) {
-        Map<String, String> parms = ConnectorControllerBase.getAllParams(connectorMessage);
+    protected List<String> getFromAndToAccount(Map<String, String> parms) {
         String fromAccount = parms.getOrDefault(FROM_ACCOUNT, "");
         String toAccount = parms.getOrDefault(TO_ACCOUNT, "");
         return List.of(fromAccount, toAccount);
@@ -6,12 +6,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
 import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
 import com.xtensifi.connectorservices.common.workflow.ConnectorState;
 import com.xtensifi.dspco.ConnectorMessage;
+import coop.constellation.connectorservices.workflowexample.helpers.ResponseComposer;
+import coop.constellation.connectorservices.workflowexample.helpers.TransactionPage;
 import lombok.RequiredArgsConstructor;
 
 @Service
@@ -19,13 +24,28 @@ import lombok.RequiredArgsConstructor;
 public class RetrieveTransactionListHandler extends HandlerBase implements WorkflowHandlerLogic {
 
     private final ConnectorLogging logger;
+    private final ObjectMapper mapper;
+
+    @Value("${workflow.transactions.max-page-size:500}")
+    private int maxPageSize;
+
     @Override
     public String generateResponse(final Map<String, String> parms, ConnectorState connectorState)
             throws IOException, ParseException {
+        String resp = ResponseComposer.toJson(out -> writeResponse(parms, connectorState, out));
+
+        // This is required, and is how you set the response for a workflow method
+        connectorState.setResponse(resp);
+        return resp;
+    }
+
+    @Override
+    public void writeResponse(final Map<String, String> parms, ConnectorState connectorState, JsonGenerator out)
+            throws IOException, ParseException {
         List<ConnectorResponse> connectorResponseList = connectorState.getConnectorResponseList().getResponses();
 
-        // This is how you capture the response
-        String resp = "{\"response\": 1}";
+        // This is a placeholder in case no responses are returned
+        String data = "1";
         for (ConnectorResponse connectorResponse : connectorResponseList) {
 
             // This is how you retrieve the name of the connector
@@ -33,16 +53,23 @@ public class RetrieveTransactionListHandler extends HandlerBase implements Workf
             logger.info(connectorState.getConnectorMessage(), name);
 
             // This is how you capture the response
-            String data = connectorResponse.getResponse();
+            data = connectorResponse.getResponse();
+        }
 
-            // Parse the response how ever you see fit
-            resp = "{\"response\": " + data + "}";
-            logger.info(connectorState.getConnectorMessage(), resp);
+        // A tile asking for a page or a filter gets it streamed out of the kiva
+        // response, without the whole transaction history being copied
+        TransactionPage page = TransactionPage.of(parms, maxPageSize);
+        if (page != null) {
+            out.writeStartObject();
+            out.writeFieldName("response");
+            page.write(mapper, data, out);
+            out.writeEndObject();
+            return;
         }
 
-        // This is required, and is how you set the response for a workflow method
-        connectorState.setResponse(resp);
-        return resp;
+        // Parse the response however you see fit, here the raw kiva JSON is copied
+        // straight into the response being built
+        writeResponseField(out, data);
     }
 
     public Function<ConnectorState, ConnectorState> processRetrieveTransactionList() {
@@ -1,5 +1,6 @@
 package coop.constellation.connectorservices.workflowexample.handlers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xtensifi.connectorservices.common.workflow.ConnectorState;
 
 import java.io.IOException;
@@ -15,4 +16,14 @@ public interface WorkflowHandlerLogic {
     String generateResponse(final Map<String, String> parms, final ConnectorState connectorState)
             throws IOException, ParseException;
 
+    /**
+     * Writes the response straight into the envelope being built. Handlers that
+     * pass large kiva payloads through should override this so the payload is not
+     * first concatenated into a String.
+     */
+    default void writeResponse(final Map<String, String> parms, final ConnectorState connectorState,
+            final JsonGenerator out) throws IOException, ParseException {
+        out.writeRawValue(generateResponse(parms, connectorState));
+    }
+
 }
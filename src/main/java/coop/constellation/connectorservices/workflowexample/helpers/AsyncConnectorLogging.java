@@ -0,0 +1,313 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands log messages to a background thread that writes them to the wrapped
+ * ConnectorLogging in batches, so workflow stages never wait on log I/O.
+ *
+ * Messages are queued on a bounded lock-free ring buffer. When the buffer
+ * fills up the overflow policy decides what happens:
+ * <ul>
+ * <li>DROP_DEBUG_FIRST: trace and debug messages are dropped once the buffer is
+ * three quarters full, info and warn messages once it is full. Error and fatal
+ * messages wait for room.</li>
+ * <li>BLOCK: every message waits for room.</li>
+ * </ul>
+ *
+ * When disabled, messages go straight to the wrapped ConnectorLogging.
+ */
+@Slf4j
+public class AsyncConnectorLogging extends ConnectorLogging implements LogLevelAware, StatsSupplier, DisposableBean {
+
+    public enum OverflowPolicy {
+        DROP_DEBUG_FIRST, BLOCK
+    }
+
+    private enum Severity {
+        TRACE, DEBUG, INFO, WARN, ERROR, FATAL
+    }
+
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final ConnectorLogging delegate;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final LogRing ring;
+    private final int debugHighWater;
+    private final Thread flusher;
+    private volatile boolean running;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder droppedDebug = new LongAdder();
+    private final LongAdder droppedInfo = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public AsyncConnectorLogging(ConnectorLogging delegate, boolean enabled, int capacity, int batchSize,
+            long flushIntervalMillis, OverflowPolicy overflowPolicy) {
+        this.delegate = delegate;
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.ring = new LogRing(capacity);
+        this.debugHighWater = ring.capacity() - ring.capacity() / 4;
+        if (enabled) {
+            this.running = true;
+            this.flusher = new Thread(this::flushLoop, "connector-log-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled(ConnectorMessage connectorMessage, Level level) {
+        return !(delegate instanceof LogLevelAware)
+                || ((LogLevelAware) delegate).isEnabled(connectorMessage, level);
+    }
+
+    @Override
+    public void trace(ConnectorMessage connectorMessage, String message) {
+        log(Severity.TRACE, connectorMessage, message);
+    }
+
+    @Override
+    public void debug(ConnectorMessage connectorMessage, String message) {
+        log(Severity.DEBUG, connectorMessage, message);
+    }
+
+    @Override
+    public void info(ConnectorMessage connectorMessage, String message) {
+        log(Severity.INFO, connectorMessage, message);
+    }
+
+    @Override
+    public void warn(ConnectorMessage connectorMessage, String message) {
+        log(Severity.WARN, connectorMessage, message);
+    }
+
+    @Override
+    public void error(ConnectorMessage connectorMessage, String message) {
+        log(Severity.ERROR, connectorMessage, message);
+    }
+
+    @Override
+    public void fatal(ConnectorMessage connectorMessage, String message) {
+        log(Severity.FATAL, connectorMessage, message);
+    }
+
+    private void log(Severity severity, ConnectorMessage connectorMessage, String message) {
+        if (!running) {
+            write(new LogRecord(severity, connectorMessage, message));
+            return;
+        }
+        if (severity.compareTo(Severity.DEBUG) <= 0 && overflowPolicy == OverflowPolicy.DROP_DEBUG_FIRST
+                && ring.size() >= debugHighWater) {
+            droppedDebug.increment();
+            return;
+        }
+        LogRecord record = new LogRecord(severity, connectorMessage, message);
+        if (ring.offer(record)) {
+            enqueued.increment();
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP_DEBUG_FIRST && severity.compareTo(Severity.WARN) <= 0) {
+            if (severity.compareTo(Severity.DEBUG) <= 0) {
+                droppedDebug.increment();
+            } else {
+                droppedInfo.increment();
+            }
+            return;
+        }
+        blocked.increment();
+        while (!ring.offer(record)) {
+            if (!running) {
+                // the flusher is gone, nothing will make room
+                write(record);
+                return;
+            }
+            LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+        }
+        enqueued.increment();
+    }
+
+    private void flushLoop() {
+        while (running || ring.size() > 0) {
+            int count = 0;
+            LogRecord record;
+            while (count < batchSize && (record = ring.poll()) != null) {
+                write(record);
+                count++;
+            }
+            if (count > 0) {
+                flushed.add(count);
+                batches.increment();
+            } else {
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+    }
+
+    private void write(LogRecord record) {
+        try {
+            switch (record.severity) {
+                case TRACE:
+                    delegate.trace(record.connectorMessage, record.message);
+                    break;
+                case DEBUG:
+                    delegate.debug(record.connectorMessage, record.message);
+                    break;
+                case INFO:
+                    delegate.info(record.connectorMessage, record.message);
+                    break;
+                case WARN:
+                    delegate.warn(record.connectorMessage, record.message);
+                    break;
+                case ERROR:
+                    delegate.error(record.connectorMessage, record.message);
+                    break;
+                default:
+                    delegate.fatal(record.connectorMessage, record.message);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // keep the flusher alive, a broken log sink must not take the connector down
+            failed.increment();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "connectorLogging";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("async", flusher != null);
+        stats.put("overflowPolicy", overflowPolicy.name());
+        stats.put("capacity", ring.capacity());
+        stats.put("backlog", ring.size());
+        stats.put("enqueued", enqueued.sum());
+        stats.put("flushed", flushed.sum());
+        stats.put("batches", batches.sum());
+        stats.put("blocked", blocked.sum());
+        stats.put("droppedDebug", droppedDebug.sum());
+        stats.put("droppedInfo", droppedInfo.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    /**
+     * Stops taking new messages and gives the flusher a few seconds to write the
+     * backlog.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(SHUTDOWN_WAIT_MILLIS);
+        if (ring.size() > 0) {
+            log.warn("Connector logging shut down with {} messages unwritten", ring.size());
+        }
+    }
+
+    private static class LogRecord {
+        private final Severity severity;
+        private final ConnectorMessage connectorMessage;
+        private final String message;
+
+        LogRecord(Severity severity, ConnectorMessage connectorMessage, String message) {
+            this.severity = severity;
+            this.connectorMessage = connectorMessage;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer ring buffer. Each slot carries a
+     * sequence number telling producers and the consumer whose turn it is, so
+     * neither side takes a lock.
+     */
+    private static class LogRing {
+        private final int mask;
+        private final AtomicReferenceArray<LogRecord> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+
+        LogRing(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            this.mask = size - 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
+
+        boolean offer(LogRecord record) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long lag = sequences.get(index) - position;
+                if (lag == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.set(index, record);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (lag < 0) {
+                    return false;
+                }
+            }
+        }
+
+        /** Only called from the flusher thread. */
+        LogRecord poll() {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                return null;
+            }
+            LogRecord record = slots.get(index);
+            slots.set(index, null);
+            sequences.set(index, position + mask + 1);
+            head = position + 1;
+            return record;
+        }
+    }
+}
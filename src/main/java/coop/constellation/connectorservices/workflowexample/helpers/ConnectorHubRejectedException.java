@@ -0,0 +1,12 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+/**
+ * A kiva call was turned away before it reached the connector hub, because the
+ * circuit of its kiva method is open or its concurrency limit is reached.
+ */
+public class ConnectorHubRejectedException extends RuntimeException {
+
+    public ConnectorHubRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,109 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.cufx.CustomData;
+import com.xtensifi.cufx.ValuePair;
+import com.xtensifi.dspco.ConnectorMessage;
+import com.xtensifi.dspco.ConnectorParametersResponse;
+import com.xtensifi.dspco.ExternalServicePayload;
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only view of all the value pairs of a connector message: the method
+ * params first, then the connector params. If a name occurs more than once,
+ * only the first occurrence is kept.
+ *
+ * Build it once per request and pass it along the pipeline. Values are HTML
+ * unescaped on first access and remembered, and values without an entity are
+ * returned as is.
+ */
+public final class ConnectorParams extends AbstractMap<String, String> {
+
+    private static final ConnectorParams EMPTY = new ConnectorParams(Map.of());
+
+    private final Map<String, String> raw;
+    private final Map<String, String> unescaped = new ConcurrentHashMap<>();
+
+    private ConnectorParams(Map<String, String> raw) {
+        this.raw = raw;
+    }
+
+    public static ConnectorParams of(final ConnectorMessage connectorMessage) {
+        if (connectorMessage == null) {
+            return EMPTY;
+        }
+        final Map<String, String> raw = new HashMap<>();
+        final ExternalServicePayload externalServicePayload = connectorMessage.getExternalServicePayload();
+        final ConnectorParametersResponse connectorParametersResponse = connectorMessage
+                .getConnectorParametersResponse();
+
+        if (externalServicePayload != null) {
+            addFirstOccurrences(raw, externalServicePayload.getPayload());
+        }
+        if (connectorParametersResponse != null) {
+            addFirstOccurrences(raw, connectorParametersResponse.getParameters());
+        }
+        return new ConnectorParams(raw);
+    }
+
+    private static void addFirstOccurrences(Map<String, String> raw, CustomData params) {
+        if (params != null) {
+            for (ValuePair valuePair : params.getValuePair()) {
+                raw.putIfAbsent(valuePair.getName(), valuePair.getValue());
+            }
+        }
+    }
+
+    @Override
+    public String get(Object name) {
+        String value = raw.get(name);
+        if (value == null || value.indexOf('&') < 0) {
+            return value;
+        }
+        return unescaped.computeIfAbsent((String) name, key -> StringEscapeUtils.unescapeHtml4(value));
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return raw.containsKey(name);
+    }
+
+    @Override
+    public int size() {
+        return raw.size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                Iterator<String> names = raw.keySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return names.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        String name = names.next();
+                        return new SimpleImmutableEntry<>(name, get(name));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return raw.size();
+            }
+        };
+    }
+}
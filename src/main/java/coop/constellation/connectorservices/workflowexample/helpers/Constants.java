@@ -7,5 +7,9 @@ public class Constants {
     public static final String FROM_ACCOUNT = "accountFrom";
     public static final String TO_ACCOUNT = "accountTo";
     public static final String ACCOUNTS = "accounts";
+    public static final String ACCOUNT_ID = "accountId";
+    public static final String IDEMPOTENCY_KEY = "idempotencyKey";
+    public static final String KIVA_CONNECTOR = "kivapublic";
+    public static final String KIVA_VERSION = "1.0";
 
 }
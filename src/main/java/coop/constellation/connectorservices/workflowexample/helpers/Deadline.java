@@ -0,0 +1,84 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which some work has to be done, set when a request
+ * arrives and carried through every stage of its pipeline. A kiva call gets
+ * the earlier of the request's deadline and its own budget.
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline("none", 0, Long.MAX_VALUE);
+
+    private final String name;
+    private final long budgetMillis;
+    private final long expiresAtNanos;
+
+    private Deadline(String name, long budgetMillis, long expiresAtNanos) {
+        this.name = name;
+        this.budgetMillis = budgetMillis;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param budgetMillis time from now, 0 or less for no deadline
+     */
+    public static Deadline after(String name, long budgetMillis) {
+        if (budgetMillis <= 0) {
+            return NONE;
+        }
+        return new Deadline(name, budgetMillis, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * @return this deadline, or the budget from now when that ends first
+     */
+    public Deadline within(String name, long budgetMillis) {
+        Deadline budget = after(name, budgetMillis);
+        if (!budget.isBounded()) {
+            return this;
+        }
+        if (!isBounded()) {
+            return budget;
+        }
+        return budget.expiresAtNanos - expiresAtNanos < 0 ? budget : this;
+    }
+
+    public boolean isBounded() {
+        return this != NONE;
+    }
+
+    public long remainingNanos() {
+        return isBounded() ? expiresAtNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Fails the stage about to run once the deadline has passed, so work nobody
+     * waits for anymore does not take a thread.
+     *
+     * @throws DeadlineExceededException when the deadline has passed
+     */
+    public void check(String stage) {
+        if (isExpired()) {
+            throw exceeded(stage);
+        }
+    }
+
+    public DeadlineExceededException exceeded(String stage) {
+        return new DeadlineExceededException(
+                name + " exceeded its " + budgetMillis + " ms deadline" + (stage != null ? " in " + stage : ""));
+    }
+
+    public String getName() {
+        return name;
+    }
+}
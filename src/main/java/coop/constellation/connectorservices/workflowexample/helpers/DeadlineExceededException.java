@@ -0,0 +1,11 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+/**
+ * A workflow request or kiva call ran past its deadline.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,12 +1,12 @@
 package coop.constellation.connectorservices.workflowexample.helpers;
 
 import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
-import com.xtensifi.cufx.CustomData;
 import com.xtensifi.cufx.ValuePair;
 import com.xtensifi.dspco.ConnectorMessage;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
 
 /**
@@ -19,7 +19,10 @@ import java.util.List;
  * Error and Fatal always log
  */
 @Slf4j
-public class EnhancedConnectorLogging extends ConnectorLogging {
+public class EnhancedConnectorLogging extends ConnectorLogging implements LogLevelAware {
+
+    private final ThreadLocal<EclDecision> lastDecision = new ThreadLocal<>();
+
     /**
      * This method enables the connector logging to be turned on or off with a
      * global connector param, 'EnableConnectorLogging' EnableConnectorLogging =
@@ -31,22 +34,49 @@ public class EnhancedConnectorLogging extends ConnectorLogging {
      * @param connectorMessage
      */
     public boolean isEclEnabled(ConnectorMessage connectorMessage) {
-        Boolean eclEnabled = false;
-        try {
-            CustomData params = connectorMessage.getConnectorParametersResponse().getParameters();
+        if (connectorMessage == null) {
+            return false;
+        }
+        // a pipeline stage logs several times in a row for the same message, so
+        // remember the last decision on this thread instead of rescanning the params
+        EclDecision last = lastDecision.get();
+        if (last != null && last.connectorMessage.get() == connectorMessage) {
+            return last.enabled;
+        }
+        boolean eclEnabled = readEclEnabled(connectorMessage);
+        lastDecision.set(new EclDecision(connectorMessage, eclEnabled));
+        return eclEnabled;
+    }
 
-            List<ValuePair> list = params.getValuePair();
-            ValuePair eclEnabledPair = list.stream()
-                    .filter(val -> val.getName().equalsIgnoreCase("EnableConnectorLogging")).findFirst().orElse(null);
-            if (eclEnabledPair != null) {
-                eclEnabled = eclEnabledPair.getValue().equalsIgnoreCase("true");
+    private static boolean readEclEnabled(ConnectorMessage connectorMessage) {
+        try {
+            List<ValuePair> list = connectorMessage.getConnectorParametersResponse().getParameters().getValuePair();
+            for (ValuePair val : list) {
+                if (val.getName().equalsIgnoreCase("EnableConnectorLogging")) {
+                    return val.getValue().equalsIgnoreCase("true");
+                }
             }
         } catch (Exception e) {
-            eclEnabled = false;
+            // missing params, logging stays off
         }
+        return false;
+    }
 
-        return eclEnabled;
-
+    @Override
+    public boolean isEnabled(ConnectorMessage connectorMessage, Level level) {
+        if (isEclEnabled(connectorMessage)) {
+            return true;
+        }
+        switch (level) {
+            case TRACE:
+                return log.isTraceEnabled();
+            case DEBUG:
+                return log.isDebugEnabled();
+            case INFO:
+                return log.isInfoEnabled();
+            default:
+                return log.isWarnEnabled();
+        }
     }
 
     /**
@@ -136,4 +166,14 @@ public class EnhancedConnectorLogging extends ConnectorLogging {
             log.warn(message);
         }
     }
-}
\ No newline at end of file
+
+    private static class EclDecision {
+        private final WeakReference<ConnectorMessage> connectorMessage;
+        private final boolean enabled;
+
+        EclDecision(ConnectorMessage connectorMessage, boolean enabled) {
+            this.connectorMessage = new WeakReference<>(connectorMessage);
+            this.enabled = enabled;
+        }
+    }
+}
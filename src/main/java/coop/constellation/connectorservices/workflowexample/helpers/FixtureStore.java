@@ -0,0 +1,188 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.dspco.ConnectorMessage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Kiva responses for the mock connector hub, held in memory so a local load
+ * test measures the connector and not fixture I/O.
+ *
+ * A fixture is named after the connector and method, with an optional variant
+ * after an '@':
+ *
+ * <pre>
+ * kivapublic-getAccounts.json                  default response
+ * kivapublic-getAccounts@user-12345.json       for user 12345 only
+ * kivapublic-getAccounts@accountId=S0001.json  when the accountId param is S0001
+ * </pre>
+ *
+ * A user variant wins over a param variant, which wins over the default.
+ * Fixtures in the fixtures directory are indexed at startup, memory mapped and
+ * decoded once, and reloaded when the files change. Fixtures that are only on
+ * the classpath are read on first use and then kept.
+ */
+@Slf4j
+public class FixtureStore implements DisposableBean {
+
+    private static final String EXTENSION = ".json";
+    private static final String USER_VARIANT = "user-";
+
+    /** Fixture base name, then variant ("" for the default) to response. */
+    private final Map<String, Map<String, String>> fixtures = new ConcurrentHashMap<>();
+    private final Path directory;
+    private final WatchService watchService;
+
+    /**
+     * @param directory fixtures directory, or null to only serve classpath
+     *                  fixtures
+     */
+    public FixtureStore(Path directory, boolean watch) throws IOException {
+        this.directory = directory;
+        if (directory == null) {
+            this.watchService = null;
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                load(file);
+            }
+        }
+        log.info("Indexed {} mock hub fixtures in {}", fixtures.values().stream().mapToInt(Map::size).sum(),
+                directory);
+        if (watch) {
+            this.watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            Thread watcher = new Thread(this::watch, "fixture-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } else {
+            this.watchService = null;
+        }
+    }
+
+    /**
+     * @return the response for the request, or null when there is no fixture for
+     *         the method
+     */
+    public String find(String connectorName, String method, ConnectorMessage connectorMessage) {
+        String baseName = connectorName + "-" + method;
+        Map<String, String> variants = fixtures.computeIfAbsent(baseName, this::loadFromClasspath);
+        if (variants.size() > (variants.containsKey("") ? 1 : 0)) {
+            String userVariant = variants.get(USER_VARIANT + KivaRequest.getUserId(connectorMessage));
+            if (userVariant != null) {
+                return userVariant;
+            }
+            Map<String, String> allParams = ConnectorParams.of(connectorMessage);
+            for (Map.Entry<String, String> variant : variants.entrySet()) {
+                int equals = variant.getKey().indexOf('=');
+                if (equals > 0 && variant.getKey().substring(equals + 1)
+                        .equals(allParams.get(variant.getKey().substring(0, equals)))) {
+                    return variant.getValue();
+                }
+            }
+        }
+        return variants.get("");
+    }
+
+    private Map<String, String> loadFromClasspath(String baseName) {
+        Map<String, String> variants = new ConcurrentHashMap<>();
+        try (InputStream in = FixtureStore.class.getResourceAsStream("/" + baseName + EXTENSION)) {
+            if (in != null) {
+                variants.put("", IOUtils.toString(in, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            log.warn("Could not read classpath fixture {}", baseName, e);
+        }
+        return variants;
+    }
+
+    /**
+     * Maps the file instead of reading it through a heap buffer; the response is
+     * decoded straight from the mapping once and then shared by every request.
+     */
+    private void load(Path file) {
+        String[] nameAndVariant = nameAndVariant(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            String response = StandardCharsets.UTF_8.decode(mapped).toString();
+            fixtures.computeIfAbsent(nameAndVariant[0], this::loadFromClasspath).put(nameAndVariant[1], response);
+        } catch (IOException e) {
+            log.warn("Could not load fixture {}", file, e);
+        }
+    }
+
+    private void unload(Path file) {
+        String[] nameAndVariant = nameAndVariant(file);
+        Map<String, String> variants = fixtures.get(nameAndVariant[0]);
+        if (variants != null) {
+            variants.remove(nameAndVariant[1]);
+        }
+    }
+
+    private static String[] nameAndVariant(Path file) {
+        String fileName = file.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - EXTENSION.length());
+        int at = name.indexOf('@');
+        return at < 0 ? new String[] { name, "" } : new String[] { name.substring(0, at), name.substring(at + 1) };
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context());
+                    if (!file.getFileName().toString().endsWith(EXTENSION)) {
+                        continue;
+                    }
+                    if (event.kind() == ENTRY_DELETE) {
+                        unload(file);
+                    } else if (Files.isRegularFile(file)) {
+                        load(file);
+                    }
+                    log.info("Reloaded mock hub fixture {}", file.getFileName());
+                }
+                if (!key.reset()) {
+                    log.warn("Fixtures directory {} is no longer watched", directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
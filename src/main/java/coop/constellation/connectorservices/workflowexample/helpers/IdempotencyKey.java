@@ -0,0 +1,61 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.dspco.ConnectorMessage;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static coop.constellation.connectorservices.workflowexample.helpers.Constants.*;
+
+/**
+ * Identifies one run of an idempotent workflow method, so a retried request is
+ * recognised. The key is the idempotencyKey request param when the tile sends
+ * one, or else derived from the kiva params, so a retry with the same params
+ * sent while the run is in flight counts as the same run. Either way it is
+ * scoped to the org, user and workflow method and hashed, so no request values
+ * end up in the idempotency store.
+ */
+@Value
+public class IdempotencyKey {
+    String value;
+    boolean clientSupplied;
+
+    /**
+     * @return null when the message carried no org or no user id; such a request
+     *         can't be told apart from another member's retry, so it is not
+     *         deduplicated
+     */
+    public static IdempotencyKey of(String workflowMethod, ConnectorMessage connectorMessage,
+            Map<String, String> allParams, Map<String, String> kivaParams) {
+        String org = KivaRequest.getOrg(connectorMessage);
+        String userId = KivaRequest.getUserId(connectorMessage);
+        if (org.isBlank() || userId.isBlank()) {
+            return null;
+        }
+        String clientKey = allParams.get(IDEMPOTENCY_KEY);
+        if (clientKey != null && !clientKey.isBlank()) {
+            return new IdempotencyKey(hash("client", org, userId, workflowMethod, clientKey.trim()), true);
+        }
+        return new IdempotencyKey(
+                hash("derived", org, userId, workflowMethod, new TreeMap<>(kivaParams).toString()), false);
+    }
+
+    private static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                // keeps ("ab", "c") apart from ("a", "bc")
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
+import com.xtensifi.dspco.ConnectorMessage;
+import com.xtensifi.dspco.ExternalServicePayload;
+import lombok.Value;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static coop.constellation.connectorservices.workflowexample.helpers.Constants.*;
+
+/**
+ * Identifies one kivapublic call: the org and user making it, which connector
+ * method, and the request params sorted by name. Two requests with the same values produce the
+ * same kiva response, so this is used as the key for caching.
+ */
+@Value
+public class KivaRequest {
+    String org;
+    String userId;
+    String connectorName;
+    String connectorVersion;
+    String method;
+    SortedMap<String, String> params;
+
+    public static KivaRequest of(ConnectorMessage connectorMessage, String method, Map<String, String> params) {
+        return new KivaRequest(getOrg(connectorMessage), getUserId(connectorMessage), KIVA_CONNECTOR, KIVA_VERSION, method,
+                Collections.unmodifiableSortedMap(new TreeMap<>(params)));
+    }
+
+    public ConnectorRequestData toConnectorRequestData() {
+        return new ConnectorRequestData(connectorName, connectorVersion, method);
+    }
+
+    public String getAccountId() {
+        return params.get(ACCOUNT_ID);
+    }
+
+    /**
+     * @return false when the message carried no org or no user id; such requests
+     *         can't be told apart by member, so they must never share responses
+     */
+    public boolean hasUser() {
+        return !org.isBlank() && !userId.isBlank();
+    }
+
+    public static String getOrg(ConnectorMessage connectorMessage) {
+        return Objects.toString(ConnectorRequestData.getConnectorParam("org", connectorMessage), "");
+    }
+
+    public static String getUserId(ConnectorMessage connectorMessage) {
+        ExternalServicePayload payload = connectorMessage.getExternalServicePayload();
+        if (payload == null || payload.getUserData() == null) {
+            return "";
+        }
+        String userId = payload.getUserData().getUserId();
+        return userId != null ? userId : "";
+    }
+}
@@ -0,0 +1,116 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in the style of
+ * HdrHistogram: every power of two microseconds is split into 16 linear
+ * buckets, so a percentile is off by at most about 6%. Recording is a couple of
+ * atomic increments and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Up to 2^40 microseconds, about 12 days; anything longer lands in the last bucket. */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        totalMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** The highest value that lands in the bucket. */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param percentile e.g. 0.95
+     * @return the percentile in microseconds, 0 when nothing was recorded
+     */
+    public long percentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        return Math.min(maxMicros.get(), percentile(snapshot, total, percentile));
+    }
+
+    /**
+     * @return count, mean, p50, p90, p99, p999 and max in milliseconds
+     */
+    public Map<String, Object> snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long max = maxMicros.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", total);
+        stats.put("meanMs", total == 0 ? 0.0 : millis(totalMicros.sum() / (double) total));
+        stats.put("p50Ms", millis(Math.min(max, percentile(snapshot, total, 0.50))));
+        stats.put("p90Ms", millis(Math.min(max, percentile(snapshot, total, 0.90))));
+        stats.put("p99Ms", millis(Math.min(max, percentile(snapshot, total, 0.99))));
+        stats.put("p999Ms", millis(Math.min(max, percentile(snapshot, total, 0.999))));
+        stats.put("maxMs", millis(max));
+        return stats;
+    }
+
+    private static long percentile(long[] snapshot, long total, double percentile) {
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return bucketUpperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    private static double millis(double micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+}
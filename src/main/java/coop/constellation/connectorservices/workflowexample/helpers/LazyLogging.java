@@ -0,0 +1,48 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.helpers.LogLevelAware.Level;
+
+import java.util.function.Supplier;
+
+/**
+ * Supplier based logging for messages that are expensive to build, such as
+ * serialized connector messages or response bodies. The supplier is only
+ * called when the ConnectorLogging would actually write the message at that
+ * level. Error and fatal always log, so they have no lazy variant.
+ */
+public final class LazyLogging {
+
+    private LazyLogging() {
+    }
+
+    public static void trace(ConnectorLogging clog, ConnectorMessage connectorMessage, Supplier<String> message) {
+        if (isEnabled(clog, connectorMessage, Level.TRACE)) {
+            clog.trace(connectorMessage, message.get());
+        }
+    }
+
+    public static void debug(ConnectorLogging clog, ConnectorMessage connectorMessage, Supplier<String> message) {
+        if (isEnabled(clog, connectorMessage, Level.DEBUG)) {
+            clog.debug(connectorMessage, message.get());
+        }
+    }
+
+    public static void info(ConnectorLogging clog, ConnectorMessage connectorMessage, Supplier<String> message) {
+        if (isEnabled(clog, connectorMessage, Level.INFO)) {
+            clog.info(connectorMessage, message.get());
+        }
+    }
+
+    public static void warn(ConnectorLogging clog, ConnectorMessage connectorMessage, Supplier<String> message) {
+        if (isEnabled(clog, connectorMessage, Level.WARN)) {
+            clog.warn(connectorMessage, message.get());
+        }
+    }
+
+    static boolean isEnabled(ConnectorLogging clog, ConnectorMessage connectorMessage, Level level) {
+        return !(clog instanceof LogLevelAware) || ((LogLevelAware) clog).isEnabled(connectorMessage, level);
+    }
+}
@@ -0,0 +1,17 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.dspco.ConnectorMessage;
+
+/**
+ * Implemented by ConnectorLogging implementations that can tell up front
+ * whether a message at a level would be written, so callers can skip building
+ * it. See LazyLogging.
+ */
+public interface LogLevelAware {
+
+    enum Level {
+        TRACE, DEBUG, INFO, WARN
+    }
+
+    boolean isEnabled(ConnectorMessage connectorMessage, Level level);
+}
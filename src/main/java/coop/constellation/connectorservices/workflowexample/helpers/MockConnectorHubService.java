@@ -10,13 +10,21 @@ import org.springframework.http.ResponseEntity;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
+/**
+ * Connector hub for the local profile. Responses come from the loader,
+ * latency and failures from the MockHubBehavior of the kiva method.
+ */
 @AllArgsConstructor
 public class MockConnectorHubService implements ConnectorHubService {
 
     private Function<ConnectorState, ConnectorState> mockResponseLoader;
     private final ConnectorLogging logger;
+    private final Executor executor;
+    private final MockHubBehavior behavior;
+    private final MockHubCompletions completions;
 
     @Override
     public Function<ConnectorRequestParams, ConnectorState> callConnectorAsync() {
@@ -32,6 +40,7 @@ public class MockConnectorHubService implements ConnectorHubService {
     public Function<ConnectorState, ConnectorMessage> completeAsync() {
         return connectorState -> {
             connectorState.getConnectorMessage().setResponse(connectorState.getResponse());
+            completions.completed(connectorState.getConnectorMessage());
             return connectorState.getConnectorMessage();
         };
     }
@@ -43,7 +52,10 @@ public class MockConnectorHubService implements ConnectorHubService {
 
     @Override
     public Function<ConnectorState, ConnectorState> waitForConnectorResponse() {
-        return state -> mockResponseLoader.apply(state);
+        return state -> {
+            behavior.apply(state.getConnectorRequestParams().getConnectorRequestData().getMethod());
+            return mockResponseLoader.apply(state);
+        };
     }
 
     @Override
@@ -84,7 +96,7 @@ public class MockConnectorHubService implements ConnectorHubService {
         Function<ConnectorRequestParams, ConnectorState> asyncConnectorRequest = this.callConnectorAsync();
         Function<ConnectorState, ConnectorState> pollAsyncConnectorRequest = this.waitForConnectorResponse();
         return this.initAsyncConnectorRequest(connectorMessage, connectorRequestData).thenApply(asyncConnectorRequest)
-                .thenApplyAsync(pollAsyncConnectorRequest);
+                .thenApplyAsync(pollAsyncConnectorRequest, executor);
     }
 
     @Override
@@ -96,7 +108,7 @@ public class MockConnectorHubService implements ConnectorHubService {
             TokenData tokenData = new TokenData("mock token");
             connectorRequestParams.setWriterToken(tokenData);
             return connectorRequestParams;
-        });
+        }, executor);
     }
 
     @Override
@@ -121,6 +133,7 @@ public class MockConnectorHubService implements ConnectorHubService {
     @Override
     public ConnectorMessage handleAsyncFlowError(Throwable exception, ConnectorMessage connectorMessage,
             String additionalGeneralErrorMessage) {
+        completions.failed(connectorMessage, exception);
         if (exception.getCause() instanceof ValidationException) {
             String var10000 = exception.getCause().getMessage();
             String detailedError = "[" + var10000 + "] Detailed Description ["
@@ -0,0 +1,156 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * How the mock connector hub answers a kiva method: how long the call takes,
+ * how often it fails and how often it times out. Read per kiva method from
+ * properties, falling back to the defaults:
+ *
+ * <pre>
+ * mock.hub.default.latency=fixed
+ * mock.hub.default.latency-ms=0
+ * mock.hub.getTransactions.latency=lognormal
+ * mock.hub.getTransactions.median-ms=120
+ * mock.hub.getTransactions.sigma=0.6
+ * mock.hub.getAccounts.latency=histogram
+ * mock.hub.getAccounts.histogram=50:60,100:25,250:10,1000:5
+ * mock.hub.startTransfer.error-rate=0.01
+ * mock.hub.startTransfer.timeout-rate=0.005
+ * mock.hub.startTransfer.timeout-ms=30000
+ * </pre>
+ *
+ * A histogram is a list of upperBoundMs:count buckets, e.g. exported from
+ * production latency metrics. A sample picks a bucket by its count and a
+ * uniform value within it.
+ */
+public class MockHubBehavior {
+
+    static final String PROPERTY_PREFIX = "mock.hub.";
+
+    private final Environment env;
+    private final Map<String, MethodBehavior> methods = new ConcurrentHashMap<>();
+
+    public MockHubBehavior(Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * Blocks for the sampled latency of the kiva method, then fails it if the
+     * error or timeout rate says so.
+     */
+    public void apply(String kivaMethod) {
+        methods.computeIfAbsent(kivaMethod, this::createBehavior).apply(kivaMethod);
+    }
+
+    private MethodBehavior createBehavior(String kivaMethod) {
+        String latency = property(kivaMethod, "latency", "fixed");
+        LatencyModel latencyModel;
+        switch (latency) {
+            case "fixed":
+                double fixedMillis = doubleProperty(kivaMethod, "latency-ms", 0);
+                latencyModel = () -> fixedMillis;
+                break;
+            case "lognormal":
+                latencyModel = lognormal(doubleProperty(kivaMethod, "median-ms", 50),
+                        doubleProperty(kivaMethod, "sigma", 0.5));
+                break;
+            case "histogram":
+                latencyModel = histogram(property(kivaMethod, "histogram", "0:1"));
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown mock hub latency model '" + latency + "' for " + kivaMethod);
+        }
+        return new MethodBehavior(latencyModel, doubleProperty(kivaMethod, "error-rate", 0),
+                doubleProperty(kivaMethod, "timeout-rate", 0), doubleProperty(kivaMethod, "timeout-ms", 30000));
+    }
+
+    private static LatencyModel lognormal(double medianMillis, double sigma) {
+        double mu = Math.log(Math.max(medianMillis, 0.001));
+        return () -> Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    private static LatencyModel histogram(String buckets) {
+        List<double[]> parsed = new ArrayList<>();
+        double total = 0;
+        for (String bucket : buckets.split(",")) {
+            String[] boundAndCount = bucket.trim().split(":");
+            double count = Double.parseDouble(boundAndCount[1]);
+            total += count;
+            parsed.add(new double[] { Double.parseDouble(boundAndCount[0]), total });
+        }
+        double totalCount = total;
+        return () -> {
+            double pick = ThreadLocalRandom.current().nextDouble(totalCount);
+            double lowerBound = 0;
+            for (double[] bucket : parsed) {
+                if (pick < bucket[1]) {
+                    return ThreadLocalRandom.current().nextDouble(lowerBound, Math.max(bucket[0], lowerBound + 1));
+                }
+                lowerBound = bucket[0];
+            }
+            return lowerBound;
+        };
+    }
+
+    private String property(String kivaMethod, String key, String defaultValue) {
+        String fallback = env.getProperty(PROPERTY_PREFIX + "default." + key, defaultValue);
+        return env.getProperty(PROPERTY_PREFIX + kivaMethod + "." + key, fallback);
+    }
+
+    private double doubleProperty(String kivaMethod, String key, double defaultValue) {
+        return Double.parseDouble(property(kivaMethod, key, Double.toString(defaultValue)));
+    }
+
+    private static void sleep(double millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep((long) millis, (int) ((millis % 1) * 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating kiva latency", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface LatencyModel {
+        double sampleMillis();
+    }
+
+    private static class MethodBehavior {
+        private final LatencyModel latencyModel;
+        private final double errorRate;
+        private final double timeoutRate;
+        private final double timeoutMillis;
+
+        MethodBehavior(LatencyModel latencyModel, double errorRate, double timeoutRate, double timeoutMillis) {
+            this.latencyModel = latencyModel;
+            this.errorRate = errorRate;
+            this.timeoutRate = timeoutRate;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        void apply(String kivaMethod) {
+            double outcome = ThreadLocalRandom.current().nextDouble();
+            if (outcome < timeoutRate) {
+                sleep(timeoutMillis);
+                throw new IllegalStateException("Mock kivapublic " + kivaMethod + " timed out",
+                        new TimeoutException(kivaMethod + " did not answer within " + timeoutMillis + " ms"));
+            }
+            sleep(latencyModel.sampleMillis());
+            if (outcome < timeoutRate + errorRate) {
+                throw new IllegalStateException("Mock kivapublic " + kivaMethod + " failed");
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.dspco.ConnectorMessage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets a caller of the local connector wait for the workflow to finish. Workflow
+ * endpoints answer the HTTP request right away and hand the real response to
+ * the connector hub later, so the mock hub reports here when a connector
+ * message tagged with a REQUEST_ID_PARAM value is completed or failed.
+ */
+public class MockHubCompletions {
+
+    public static final String REQUEST_ID_PARAM = "mockHubRequestId";
+
+    private final Map<String, CompletableFuture<ConnectorMessage>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @return completes with the message once the workflow completes it, or
+     *         exceptionally once it fails
+     */
+    public CompletableFuture<ConnectorMessage> expect(String requestId) {
+        return pending.computeIfAbsent(requestId, id -> new CompletableFuture<>());
+    }
+
+    /** Gives up on a request, e.g. after the caller timed out waiting. */
+    public void forget(String requestId) {
+        pending.remove(requestId);
+    }
+
+    void completed(ConnectorMessage connectorMessage) {
+        CompletableFuture<ConnectorMessage> future = remove(connectorMessage);
+        if (future != null) {
+            future.complete(connectorMessage);
+        }
+    }
+
+    void failed(ConnectorMessage connectorMessage, Throwable exception) {
+        CompletableFuture<ConnectorMessage> future = remove(connectorMessage);
+        if (future != null) {
+            future.completeExceptionally(exception);
+        }
+    }
+
+    private CompletableFuture<ConnectorMessage> remove(ConnectorMessage connectorMessage) {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        String requestId = ConnectorParams.of(connectorMessage).get(REQUEST_ID_PARAM);
+        return requestId != null ? pending.remove(requestId) : null;
+    }
+}
@@ -0,0 +1,13 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+/**
+ * An earlier run with the same idempotency key may have reached the connector
+ * hub, but gave up before its outcome was known, so the request is not sent
+ * again.
+ */
+public class OutcomeUnknownException extends RuntimeException {
+
+    public OutcomeUnknownException(String message) {
+        super(message);
+    }
+}
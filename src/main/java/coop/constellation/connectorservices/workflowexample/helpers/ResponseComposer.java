@@ -0,0 +1,55 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Builds response JSON by streaming it through a JsonGenerator into a chunked
+ * buffer, so large kiva payloads are copied into the response once instead of
+ * once per level of string concatenation. The result is materialized as a
+ * String a single time at the end.
+ */
+public final class ResponseComposer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Writes part of a response to the generator.
+     */
+    @FunctionalInterface
+    public interface PayloadWriter {
+        void write(JsonGenerator out) throws IOException, ParseException;
+    }
+
+    private ResponseComposer() {
+    }
+
+    /**
+     * @return the JSON written by the payload writer
+     */
+    public static String toJson(PayloadWriter payload) throws IOException, ParseException {
+        SegmentedStringWriter buffer = new SegmentedStringWriter(new BufferRecycler());
+        try (JsonGenerator out = JSON_FACTORY.createGenerator(buffer)) {
+            payload.write(out);
+        }
+        return buffer.getAndClear();
+    }
+
+    /**
+     * @return {"response": ...} wrapped around the JSON written by the payload
+     *         writer
+     */
+    public static String envelope(PayloadWriter payload) throws IOException, ParseException {
+        return toJson(out -> {
+            out.writeStartObject();
+            out.writeFieldName("response");
+            payload.write(out);
+            out.writeEndObject();
+        });
+    }
+}
@@ -0,0 +1,14 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import java.util.Map;
+
+/**
+ * Implemented by components that publish runtime gauges and counters. Every
+ * StatsSupplier bean is reported by the controller's stats endpoint under its
+ * name.
+ */
+public interface StatsSupplier {
+    String getName();
+
+    Map<String, Object> get();
+}
@@ -7,7 +7,12 @@ import com.xtensifi.dspco.ConnectorMessage;
  * This can be used as the ConnectorLogging implementation for local development
  * by setting up a spring bean with it while in the "local" profile.
  */
-public class StdoutConnectorLogging extends ConnectorLogging {
+public class StdoutConnectorLogging extends ConnectorLogging implements LogLevelAware {
+    @Override
+    public boolean isEnabled(ConnectorMessage connectorMessage, Level level) {
+        return true;
+    }
+
     @Override
     public void debug(ConnectorMessage connectorMessage, String message) {
         System.out.println(message);
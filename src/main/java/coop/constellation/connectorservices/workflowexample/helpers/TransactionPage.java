@@ -0,0 +1,193 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One page of a getTransactions response, filtered by posted date, amount and
+ * category. The kiva response is read with a streaming parser: only one
+ * transaction is held as a tree at a time, and reading stops as soon as the
+ * page is full and it is known whether another page follows.
+ *
+ * The request params are pageSize, cursor, fromDate and toDate (yyyy-MM-dd,
+ * inclusive), minAmount, maxAmount and category. The page is written as
+ *
+ * <pre>
+ * {"transactions": [...], "nextCursor": "..." | null}
+ * </pre>
+ *
+ * where nextCursor is an opaque token for the following page, only valid with
+ * the same filters.
+ */
+public final class TransactionPage {
+
+    public static final String PAGE_SIZE = "pageSize";
+    public static final String CURSOR = "cursor";
+    public static final String FROM_DATE = "fromDate";
+    public static final String TO_DATE = "toDate";
+    public static final String MIN_AMOUNT = "minAmount";
+    public static final String MAX_AMOUNT = "maxAmount";
+    public static final String CATEGORY = "category";
+
+    private static final String TRANSACTION_ARRAY = "transaction";
+    private static final String CURSOR_VERSION = "v1";
+    private static final int DATE_LENGTH = "yyyy-MM-dd".length();
+
+    private final int pageSize;
+    private final long offset;
+    private final String fromDate;
+    private final String toDate;
+    private final BigDecimal minAmount;
+    private final BigDecimal maxAmount;
+    private final String category;
+
+    private TransactionPage(int pageSize, long offset, String fromDate, String toDate, BigDecimal minAmount,
+            BigDecimal maxAmount, String category) {
+        this.pageSize = pageSize;
+        this.offset = offset;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        this.category = category;
+    }
+
+    /**
+     * @param maxPageSize the largest page served, also used when no pageSize is
+     *                    given; 0 or less for no limit
+     * @return the page the request asks for, or null when it has none of the
+     *         paging or filter params and wants the kiva response as is
+     * @throws IllegalArgumentException when a param can't be parsed
+     */
+    public static TransactionPage of(Map<String, String> allParams, int maxPageSize) {
+        String pageSize = blankToNull(allParams.get(PAGE_SIZE));
+        String cursor = blankToNull(allParams.get(CURSOR));
+        String fromDate = blankToNull(allParams.get(FROM_DATE));
+        String toDate = blankToNull(allParams.get(TO_DATE));
+        String minAmount = blankToNull(allParams.get(MIN_AMOUNT));
+        String maxAmount = blankToNull(allParams.get(MAX_AMOUNT));
+        String category = blankToNull(allParams.get(CATEGORY));
+        if (pageSize == null && cursor == null && fromDate == null && toDate == null && minAmount == null
+                && maxAmount == null && category == null) {
+            return null;
+        }
+        int limit = maxPageSize > 0 ? maxPageSize : Integer.MAX_VALUE;
+        TransactionPage page = new TransactionPage(
+                pageSize != null ? Math.max(1, Math.min(limit, Integer.parseInt(pageSize))) : limit, 0,
+                fromDate, toDate, minAmount != null ? new BigDecimal(minAmount) : null,
+                maxAmount != null ? new BigDecimal(maxAmount) : null, category);
+        return cursor != null ? page.at(page.decodeCursor(cursor)) : page;
+    }
+
+    private TransactionPage at(long offset) {
+        return new TransactionPage(pageSize, offset, fromDate, toDate, minAmount, maxAmount, category);
+    }
+
+    /**
+     * Streams the page out of the kiva response into the generator.
+     */
+    public void write(ObjectMapper mapper, String kivaResponse, JsonGenerator out) throws IOException {
+        String nextCursor = null;
+        out.writeStartObject();
+        out.writeArrayFieldStart("transactions");
+        try (JsonParser parser = mapper.getFactory().createParser(kivaResponse)) {
+            if (seekTransactionArray(parser)) {
+                long matched = 0;
+                long end = offset + pageSize;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode transaction = parser.readValueAsTree();
+                    if (!matches(transaction)) {
+                        continue;
+                    }
+                    if (matched >= end) {
+                        // one more match past the page, so there is a next page
+                        nextCursor = encodeCursor(end);
+                        break;
+                    }
+                    if (matched++ >= offset) {
+                        mapper.writeTree(out, transaction);
+                    }
+                }
+            }
+        }
+        out.writeEndArray();
+        out.writeStringField("nextCursor", nextCursor);
+        out.writeEndObject();
+    }
+
+    /* Advances the parser to the start of the first "transaction" array */
+    private static boolean seekTransactionArray(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.FIELD_NAME && TRANSACTION_ARRAY.equals(parser.getCurrentName())
+                    && parser.nextToken() == JsonToken.START_ARRAY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean matches(JsonNode transaction) {
+        if (fromDate != null || toDate != null) {
+            String postedDate = transaction.path("postedDate").asText("");
+            String date = postedDate.length() >= DATE_LENGTH ? postedDate.substring(0, DATE_LENGTH) : postedDate;
+            if ((fromDate != null && date.compareTo(fromDate) < 0) || (toDate != null && date.compareTo(toDate) > 0)) {
+                return false;
+            }
+        }
+        if (minAmount != null || maxAmount != null) {
+            JsonNode amount = transaction.path("amount");
+            JsonNode value = amount.isObject() ? amount.path("value") : amount;
+            if (!value.isNumber() && !value.isTextual()) {
+                return false;
+            }
+            BigDecimal decimal;
+            try {
+                decimal = value.isNumber() ? value.decimalValue() : new BigDecimal(value.asText());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if ((minAmount != null && decimal.compareTo(minAmount) < 0)
+                    || (maxAmount != null && decimal.compareTo(maxAmount) > 0)) {
+                return false;
+            }
+        }
+        return category == null || category.equalsIgnoreCase(transaction.path("category").asText(""));
+    }
+
+    /* The filters a cursor was issued for, so a cursor is not reused across different filters */
+    private String filterKey() {
+        return Integer.toHexString(Objects.hash(fromDate, toDate, minAmount, maxAmount,
+                category != null ? category.toLowerCase() : null));
+    }
+
+    String encodeCursor(long nextOffset) {
+        String cursor = CURSOR_VERSION + ":" + nextOffset + ":" + filterKey();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long decodeCursor(String cursor) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        if (parts.length != 3 || !CURSOR_VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Unknown cursor " + cursor);
+        }
+        if (!filterKey().equals(parts[2])) {
+            throw new IllegalArgumentException("Cursor was issued for different filters");
+        }
+        return Math.max(0, Long.parseLong(parts[1]));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
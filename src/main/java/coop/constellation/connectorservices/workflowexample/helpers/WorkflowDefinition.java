@@ -0,0 +1,72 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.handlers.WorkflowHandlerLogic;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes a workflow method that makes one kivapublic call and hands the
+ * response to a handler: the kiva method, which request params it passes on,
+ * whether it is a write that makes cached reads of the touched accounts stale
+ * and whether a retried request must not make the kiva call again.
+ */
+@Value
+@Builder
+public class WorkflowDefinition {
+
+    /** The workflow method, also the last segment of its path. */
+    @NonNull
+    String name;
+    @NonNull
+    String kivaMethod;
+    @NonNull
+    WorkflowHandlerLogic handler;
+
+    /** Request params passed on to kiva under the same name. */
+    @Builder.Default
+    List<String> paramNames = List.of();
+
+    /** Pass params that are missing or empty on as "" instead of leaving them out. */
+    boolean sendEmptyParams;
+
+    /** Builds the kiva params in place of paramNames, for methods that rename or expand them. */
+    KivaParamsMapper paramsMapper;
+
+    /** Drop cached reads of the accountId, accountFrom and accountTo accounts. */
+    boolean invalidatesAccounts;
+
+    /** Make the kiva call once per idempotency key; retries get the first call's response. */
+    boolean idempotent;
+
+    @FunctionalInterface
+    public interface KivaParamsMapper {
+        Map<String, String> map(ConnectorMessage connectorMessage, Map<String, String> allParams);
+    }
+
+    /**
+     * @return the kiva params for a request with the given params
+     */
+    public Map<String, String> kivaParams(ConnectorMessage connectorMessage, Map<String, String> allParams) {
+        if (paramsMapper != null) {
+            return paramsMapper.map(connectorMessage, allParams);
+        }
+        if (paramNames.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> kivaParams = new HashMap<>(paramNames.size() * 2);
+        for (String name : paramNames) {
+            String value = allParams.getOrDefault(name, "");
+            if (sendEmptyParams || !value.isEmpty()) {
+                kivaParams.put(name, value);
+            }
+        }
+        return kivaParams;
+    }
+}
@@ -0,0 +1,11 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Supplies the executor each workflow method runs its async stages on, so a
+ * slow method can only exhaust its own pool.
+ */
+public interface WorkflowExecutors {
+    Executor get(String workflowMethod);
+}
@@ -1,6 +1,7 @@
 package coop.constellation.connectorservices.workflowexample.helpers;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
 import com.xtensifi.connectorservices.common.workflow.ConnectorRequestParams;
@@ -9,10 +10,9 @@ import com.xtensifi.connectorservices.common.workflow.ConnectorState;
 import com.xtensifi.dspco.ConnectorMessage;
 
 public class WorkflowHelpers {
-    public static CompletableFuture<ConnectorState> createNewConnectorStateFuture(ConnectorMessage connectorMessage) {
-        return CompletableFuture.supplyAsync(() -> {
-            return createNewConnectorState(connectorMessage);
-        });
+    public static CompletableFuture<ConnectorState> createNewConnectorStateFuture(ConnectorMessage connectorMessage,
+            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> createNewConnectorState(connectorMessage), executor);
     }
 
     public static ConnectorState createNewConnectorState(ConnectorMessage connectorMessage) {
@@ -0,0 +1,11 @@
+package coop.constellation.connectorservices.workflowexample.helpers;
+
+/**
+ * A workflow request was turned away at ingress instead of being run.
+ */
+public class WorkflowRejectedException extends RuntimeException {
+
+    public WorkflowRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,142 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caps the workflow pipelines in flight, per workflow method and in total, so a
+ * traffic spike is turned away at ingress instead of piling up in the executor
+ * queues. A pipeline counts from the moment it is admitted until its connector
+ * message is completed.
+ *
+ * The limits are workflow.admission.max-in-flight in total and
+ * workflow.admission.<workflowMethod>.max-in-flight, falling back to
+ * workflow.admission.default.max-in-flight, per method; 0 or less is no limit.
+ */
+@Service
+public class AdmissionController implements StatsSupplier {
+
+    /** How a request over a limit is answered. */
+    public enum Rejection {
+        /** Synchronously, with 429 Too Many Requests. */
+        TOO_MANY_REQUESTS,
+        /** With 200 and the workflow's usual error completion. */
+        ERROR_COMPLETION
+    }
+
+    private final Environment env;
+    private final int globalLimit;
+    private final Rejection rejection;
+    private final AtomicInteger globalInFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder rejectedGlobal = new LongAdder();
+    private final Map<String, MethodAdmission> methods = new ConcurrentHashMap<>();
+
+    public AdmissionController(Environment env) {
+        this.env = env;
+        this.globalLimit = env.getProperty("workflow.admission.max-in-flight", Integer.class, 1000);
+        this.rejection = env.getProperty("workflow.admission.rejection", Rejection.class,
+                Rejection.TOO_MANY_REQUESTS);
+    }
+
+    public Rejection getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Starts the pipeline when both its method and the service are under their
+     * limits, and holds its place until the pipeline's future completes.
+     *
+     * @return false, without starting the pipeline, when a limit is reached
+     */
+    public boolean runIfAdmitted(String workflowMethod, Supplier<? extends CompletableFuture<?>> pipeline) {
+        MethodAdmission method = methods.computeIfAbsent(workflowMethod, MethodAdmission::new);
+        if (!tryAcquire(globalInFlight, globalLimit)) {
+            rejectedGlobal.increment();
+            return false;
+        }
+        if (!tryAcquire(method.inFlight, method.limit)) {
+            globalInFlight.decrementAndGet();
+            method.rejected.increment();
+            return false;
+        }
+        peakInFlight.accumulateAndGet(globalInFlight.get(), Math::max);
+        method.admitted.increment();
+        try {
+            pipeline.get().whenComplete((result, exception) -> release(method));
+        } catch (RuntimeException e) {
+            release(method);
+            throw e;
+        }
+        return true;
+    }
+
+    private void release(MethodAdmission method) {
+        method.inFlight.decrementAndGet();
+        globalInFlight.decrementAndGet();
+    }
+
+    private static boolean tryAcquire(AtomicInteger inFlight, int limit) {
+        if (limit <= 0) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "admission";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", globalLimit);
+        stats.put("inFlight", globalInFlight.get());
+        stats.put("peakInFlight", peakInFlight.get());
+        stats.put("rejected", rejectedGlobal.sum());
+        stats.put("rejection", rejection.name());
+        Map<String, Object> methodStats = new TreeMap<>();
+        methods.forEach((name, method) -> {
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("limit", method.limit);
+            counts.put("inFlight", method.inFlight.get());
+            counts.put("admitted", method.admitted.sum());
+            counts.put("rejected", method.rejected.sum());
+            methodStats.put(name, counts);
+        });
+        stats.put("methods", methodStats);
+        return stats;
+    }
+
+    private final class MethodAdmission {
+        final int limit;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+
+        MethodAdmission(String workflowMethod) {
+            Integer fallback = env.getProperty("workflow.admission.default.max-in-flight", Integer.class, 200);
+            this.limit = env.getProperty("workflow.admission." + workflowMethod + ".max-in-flight", Integer.class,
+                    fallback);
+        }
+    }
+}
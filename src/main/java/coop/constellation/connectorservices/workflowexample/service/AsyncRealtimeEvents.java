@@ -0,0 +1,349 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.connectorservices.common.events.RealtimeEventService;
+import com.xtensifi.connectorservices.common.events.model.RealtimeEventData;
+import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.helpers.LazyLogging;
+import coop.constellation.connectorservices.workflowexample.helpers.RealtimeEvents;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes realtime events from a background thread, so a transfer completes
+ * without waiting on the event bus.
+ *
+ * Events are built on the calling thread and queued on a bounded queue; when it
+ * is full the event is dropped and logged rather than holding up the workflow.
+ * The publisher drains the queue in batches and sends each org's events
+ * together. When the bus rejects an event, it and the rest of that org's batch
+ * are retried with exponential backoff, without holding up other orgs, until
+ * maxAttempts is reached.
+ *
+ * With a coalescing window, events for the same org, source and event name
+ * that arrive within the window are merged into one event carrying the union of
+ * their affected items, queued once when the window closes. A burst of
+ * transfers on the same accounts then makes subscribed tiles refetch once
+ * instead of once per transfer.
+ *
+ * When disabled, events are sent by the wrapped RealtimeEvents on the calling
+ * thread.
+ */
+@Slf4j
+public class AsyncRealtimeEvents implements RealtimeEvents, StatsSupplier, DisposableBean {
+
+    private static final long POLL_MILLIS = 100;
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final RealtimeEvents delegate;
+    private final BlockingQueue<PendingEvent> queue;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final long coalesceWindowMillis;
+    private final Map<WindowKey, Window> windows = new ConcurrentHashMap<>();
+    private final Thread publisher;
+    /** Runs retries and closes coalescing windows. */
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param coalesceWindowMillis how long events are merged before they are
+     *                             queued, 0 queues every event as it is sent
+     */
+    public AsyncRealtimeEvents(RealtimeEvents delegate, boolean enabled, int capacity, int batchSize,
+            int maxAttempts, long backoffMillis, long maxBackoffMillis, long coalesceWindowMillis) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.running = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = Math.max(1, backoffMillis);
+        this.maxBackoffMillis = Math.max(this.backoffMillis, maxBackoffMillis);
+        this.coalesceWindowMillis = Math.max(0, coalesceWindowMillis);
+        if (enabled) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "realtime-event-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.publisher = new Thread(this::publishLoop, "realtime-event-publisher");
+            this.publisher.setDaemon(true);
+            this.publisher.start();
+        } else {
+            this.scheduler = null;
+            this.publisher = null;
+        }
+    }
+
+    @Override
+    public void send(String source, String eventName, List<String> affectedItems, ConnectorMessage connectorMessage,
+            ConnectorLogging clog, RealtimeEventService realtimeEventService) {
+        if (publisher == null) {
+            delegate.send(source, eventName, affectedItems, connectorMessage, clog, realtimeEventService);
+            return;
+        }
+        if (realtimeEventService == null) {
+            clog.error(connectorMessage, "Realtime event service is null");
+            return;
+        }
+        String orgId = Objects.toString(ConnectorRequestData.getConnectorParam("org", connectorMessage), "");
+        if (coalesceWindowMillis > 0) {
+            coalesce(new WindowKey(orgId, source, eventName), affectedItems, connectorMessage, clog,
+                    realtimeEventService);
+            return;
+        }
+        RealtimeEventData eventData = RealtimeEventsImpl.toEventData(source, eventName, affectedItems,
+                connectorMessage);
+        enqueue(new PendingEvent(orgId, eventData, connectorMessage, clog, realtimeEventService));
+    }
+
+    private void enqueue(PendingEvent event) {
+        if (!running || !queue.offer(event)) {
+            dropped.increment();
+            event.clog.error(event.connectorMessage,
+                    "Realtime event queue is full, dropped an event for org " + event.orgId);
+            return;
+        }
+        queued.increment();
+    }
+
+    /**
+     * Adds the affected items to the open window for the key, or opens one that
+     * closes coalesceWindowMillis from now. The first event of a window supplies
+     * the connector message the merged event is built for.
+     */
+    private void coalesce(WindowKey key, List<String> affectedItems, ConnectorMessage connectorMessage,
+            ConnectorLogging clog, RealtimeEventService realtimeEventService) {
+        while (true) {
+            Window window = windows.computeIfAbsent(key, k -> {
+                Window opened = new Window(connectorMessage, clog, realtimeEventService);
+                try {
+                    scheduler.schedule(() -> close(k, opened), coalesceWindowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // shutting down, the window is closed by destroy
+                }
+                return opened;
+            });
+            synchronized (window) {
+                if (!window.closed) {
+                    if (window.events++ > 0) {
+                        coalesced.increment();
+                    }
+                    window.affectedItems.addAll(affectedItems);
+                    return;
+                }
+            }
+            // closed between the lookup and the lock, open a new one
+        }
+    }
+
+    private void close(WindowKey key, Window window) {
+        windows.remove(key, window);
+        List<String> affectedItems;
+        synchronized (window) {
+            if (window.closed) {
+                return;
+            }
+            window.closed = true;
+            affectedItems = new ArrayList<>(window.affectedItems);
+        }
+        RealtimeEventData eventData = RealtimeEventsImpl.toEventData(key.source, key.eventName, affectedItems,
+                window.connectorMessage);
+        enqueue(new PendingEvent(key.orgId, eventData, window.connectorMessage, window.clog,
+                window.realtimeEventService));
+    }
+
+    private void publishLoop() {
+        List<PendingEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingEvent first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                batches.increment();
+                publish(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Realtime event publisher failed a batch", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publish(List<PendingEvent> batch) {
+        Map<String, List<PendingEvent>> byOrg = new LinkedHashMap<>();
+        for (PendingEvent event : batch) {
+            byOrg.computeIfAbsent(event.orgId, orgId -> new ArrayList<>()).add(event);
+        }
+        byOrg.values().forEach(this::publishOrg);
+    }
+
+    private void publishOrg(List<PendingEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            PendingEvent event = events.get(i);
+            LazyLogging.info(event.clog, event.connectorMessage,
+                    () -> "Event being sent to Real Time Event Bus: " + event.json());
+            try {
+                event.realtimeEventService.sendEvent(event.eventData);
+                published.increment();
+            } catch (Exception e) {
+                event.clog.error(event.connectorMessage,
+                        "Realtime event bus rejected event for org " + event.orgId + ": " + e.getMessage());
+                // the bus is likely failing for the whole org, back off its remaining events too
+                events.subList(i, events.size()).forEach(this::retry);
+                return;
+            }
+        }
+    }
+
+    private void retry(PendingEvent event) {
+        event.attempts++;
+        if (event.attempts >= maxAttempts) {
+            failed.increment();
+            event.clog.error(event.connectorMessage,
+                    "Giving up on realtime event after " + event.attempts + " attempts: " + event.json());
+            return;
+        }
+        long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(event.attempts - 1, 20));
+        delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        try {
+            scheduler.schedule(() -> {
+                if (!queue.offer(event)) {
+                    dropped.increment();
+                    event.clog.error(event.connectorMessage, "Realtime event queue is full, dropped a retry");
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            retried.increment();
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            failed.increment();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "realtimeEvents";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("async", publisher != null);
+        stats.put("capacity", queue.size() + queue.remainingCapacity());
+        stats.put("backlog", queue.size());
+        stats.put("queued", queued.sum());
+        stats.put("published", published.sum());
+        stats.put("batches", batches.sum());
+        stats.put("retried", retried.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("openWindows", windows.size());
+        return stats;
+    }
+
+    /**
+     * Queues the open coalescing windows, stops taking new events and gives the
+     * publisher a few seconds to send the backlog. Events waiting for a retry are
+     * not sent.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (publisher == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        windows.forEach(this::close);
+        running = false;
+        publisher.join(SHUTDOWN_WAIT_MILLIS);
+        if (!queue.isEmpty()) {
+            log.warn("Realtime events shut down with {} events unsent", queue.size());
+        }
+    }
+
+    @Value
+    private static class WindowKey {
+        String orgId;
+        String source;
+        String eventName;
+    }
+
+    private static class Window {
+        private final ConnectorMessage connectorMessage;
+        private final ConnectorLogging clog;
+        private final RealtimeEventService realtimeEventService;
+        private final Set<String> affectedItems = new LinkedHashSet<>();
+        private int events;
+        private boolean closed;
+
+        Window(ConnectorMessage connectorMessage, ConnectorLogging clog, RealtimeEventService realtimeEventService) {
+            this.connectorMessage = connectorMessage;
+            this.clog = clog;
+            this.realtimeEventService = realtimeEventService;
+        }
+    }
+
+    private static class PendingEvent {
+        private final String orgId;
+        private final RealtimeEventData eventData;
+        private final ConnectorMessage connectorMessage;
+        private final ConnectorLogging clog;
+        private final RealtimeEventService realtimeEventService;
+        private int attempts;
+        private String json;
+
+        PendingEvent(String orgId, RealtimeEventData eventData, ConnectorMessage connectorMessage,
+                ConnectorLogging clog, RealtimeEventService realtimeEventService) {
+            this.orgId = orgId;
+            this.eventData = eventData;
+            this.connectorMessage = connectorMessage;
+            this.clog = clog;
+            this.realtimeEventService = realtimeEventService;
+        }
+
+        /** Serialized at most once, however often the event is logged or retried. */
+        String json() {
+            if (json == null) {
+                json = RealtimeEventsImpl.toJson(eventData);
+            }
+            return json;
+        }
+    }
+}
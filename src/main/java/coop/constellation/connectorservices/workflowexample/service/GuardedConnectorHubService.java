@@ -0,0 +1,454 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.connectorservices.common.workflow.*;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.helpers.ConnectorHubRejectedException;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Connector hub that protects kivapublic, and this service, when kivapublic
+ * degrades. Each kiva method gets a circuit breaker and an AIMD concurrency
+ * limit:
+ *
+ * <ul>
+ * <li>The circuit opens when at least failureRatePercent of the last
+ * windowSize calls failed. While open, calls are rejected right away; after
+ * openMillis, halfOpenCalls trial calls are let through, and the circuit closes
+ * once they all succeed or opens again on the first failure.</li>
+ * <li>The limit grows by one for each limit's worth of fast successful calls,
+ * and is multiplied by backoffRatio for each failed call or call slower than
+ * slowCallMillis. Calls past the limit are rejected right away.</li>
+ * </ul>
+ *
+ * Calls made through guarded, and executeConnector, are checked against both
+ * before anything is sent. A rejected call fails with a
+ * ConnectorHubRejectedException, so the workflow's usual error completion
+ * answers the hub without anything reaching kivapublic. An admitted call holds
+ * its permit, and its trial slot while half open, until its wait for the
+ * response ends, or until the call fails without getting that far. The breaker
+ * and the limit learn from its outcome and duration. Cancelling the future
+ * guarded returns does not stop a request that is already out, so such a call
+ * keeps its permit until its wait ends; a call cancelled before its request
+ * was sent sends nothing and gives its permit back without an outcome.
+ */
+@Slf4j
+public class GuardedConnectorHubService implements ConnectorHubService, StatsSupplier {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Value
+    @Builder
+    public static class Settings {
+        boolean enabled;
+        int windowSize;
+        int minCalls;
+        int failureRatePercent;
+        long openMillis;
+        int halfOpenCalls;
+        int initialLimit;
+        int minLimit;
+        int maxLimit;
+        long slowCallMillis;
+        double backoffRatio;
+    }
+
+    private final ConnectorHubService delegate;
+    private final Settings settings;
+    private final Map<String, MethodGuard> guards = new ConcurrentHashMap<>();
+
+    public GuardedConnectorHubService(ConnectorHubService delegate, Settings settings) {
+        this.delegate = delegate;
+        this.settings = settings;
+    }
+
+    /**
+     * Makes the call, from initAsyncConnectorRequest through
+     * waitForConnectorResponse, under its kiva method's guard. The call wraps
+     * its send stage with the given permit's beforeSending and its wait stage
+     * with whileWaiting, so the permit is held for as long as the connector hub
+     * may still be working on the request.
+     *
+     * @return a future that completes like the call, failed with a
+     *         ConnectorHubRejectedException when the guard turns it away.
+     *         Cancelling it stops the call before its request is sent, but not
+     *         after.
+     */
+    public CompletableFuture<ConnectorState> guarded(ConnectorRequestData connectorRequestData,
+            Function<Permit, CompletableFuture<ConnectorState>> call) {
+        MethodGuard guard = null;
+        if (settings.isEnabled()) {
+            guard = guard(connectorRequestData.getMethod());
+            String rejection = guard.admit();
+            if (rejection != null) {
+                return CompletableFuture.failedFuture(rejected(connectorRequestData, rejection));
+            }
+        }
+        Permit permit = new Permit(guard);
+        CompletableFuture<ConnectorState> future;
+        try {
+            future = call.apply(permit);
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+        // a copy, so cancelling it can't skip the wait that releases the permit
+        CompletableFuture<ConnectorState> result = new CompletableFuture<>();
+        future.whenComplete((connectorState, exception) -> {
+            permit.release(exception);
+            if (exception != null) {
+                result.completeExceptionally(exception);
+            } else {
+                result.complete(connectorState);
+            }
+        });
+        result.whenComplete((connectorState, exception) -> {
+            if (exception instanceof CancellationException) {
+                permit.cancelled = true;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The admission of one guarded call. It is given back exactly once, when
+     * the call's wait for its response ends or else when the call completes.
+     */
+    public static final class Permit {
+
+        private final MethodGuard guard;
+        private final long started = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        private Permit(MethodGuard guard) {
+            this.guard = guard;
+        }
+
+        /**
+         * Wraps the stage that sends the request, so a call cancelled before it
+         * got there fails with a CancellationException instead.
+         */
+        public <T, R> Function<T, R> beforeSending(Function<T, R> send) {
+            return input -> {
+                if (cancelled) {
+                    throw new CancellationException("cancelled before it was sent");
+                }
+                return send.apply(input);
+            };
+        }
+
+        /**
+         * Wraps the stage that waits for the connector hub's response, so the
+         * permit is given back, with the call's outcome, when the wait ends.
+         */
+        public <T, R> Function<T, R> whileWaiting(Function<T, R> wait) {
+            return input -> {
+                Throwable failure = null;
+                try {
+                    return wait.apply(input);
+                } catch (RuntimeException | Error e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    release(failure);
+                }
+            };
+        }
+
+        private void release(Throwable exception) {
+            if (guard == null || !released.compareAndSet(false, true)) {
+                return;
+            }
+            Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                    ? exception.getCause()
+                    : exception;
+            if (cause instanceof CancellationException) {
+                guard.cancelled();
+            } else {
+                guard.release(System.nanoTime() - started, exception == null);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<ConnectorRequestParams> initAsyncConnectorRequest(ConnectorMessage connectorMessage,
+            ConnectorRequestData connectorRequestData) {
+        return delegate.initAsyncConnectorRequest(connectorMessage, connectorRequestData);
+    }
+
+    @Override
+    public Function<ConnectorState, ConnectorState> waitForConnectorResponse() {
+        return delegate.waitForConnectorResponse();
+    }
+
+    @Override
+    public CompletableFuture<ConnectorState> executeConnector(ConnectorMessage connectorMessage,
+            ConnectorRequestData connectorRequestData) {
+        return guarded(connectorRequestData, permit -> delegate.executeConnector(connectorMessage, connectorRequestData));
+    }
+
+    private MethodGuard guard(String kivaMethod) {
+        return guards.computeIfAbsent(kivaMethod, MethodGuard::new);
+    }
+
+    private static ConnectorHubRejectedException rejected(ConnectorRequestData connectorRequestData, String reason) {
+        return new ConnectorHubRejectedException(connectorRequestData.getConnectorName() + " "
+                + connectorRequestData.getMethod() + " call rejected: " + reason);
+    }
+
+    @Override
+    public Function<ConnectorRequestParams, ConnectorState> callConnectorAsync() {
+        return delegate.callConnectorAsync();
+    }
+
+    @Override
+    public Function<ConnectorState, ConnectorState> callConnectorUsingState() {
+        return delegate.callConnectorUsingState();
+    }
+
+    @Override
+    public Function<ConnectorState, ConnectorMessage> completeAsync() {
+        return delegate.completeAsync();
+    }
+
+    @Override
+    public Function<ConnectorMessage, ConnectorMessage> complete() {
+        return delegate.complete();
+    }
+
+    @Override
+    public TokenData callConnector(ConnectorRequestParams connectorRequestParams) throws ConnectorHubServiceException {
+        return delegate.callConnector(connectorRequestParams);
+    }
+
+    @Override
+    public ConnectorMessage complete(ConnectorState connectorState) throws ConnectorHubServiceException {
+        return delegate.complete(connectorState);
+    }
+
+    @Override
+    public ConnectorMessage complete(ConnectorMessage connectorMessage) throws ConnectorHubServiceException {
+        return delegate.complete(connectorMessage);
+    }
+
+    @Override
+    public ResponseEntity<String> handleResponse(CloseableHttpResponse response) throws IOException {
+        return delegate.handleResponse(response);
+    }
+
+    @Override
+    public ConnectorState prepareNextConnector(ConnectorRequestData nextConnector, ConnectorState connectorState) {
+        return delegate.prepareNextConnector(nextConnector, connectorState);
+    }
+
+    @Override
+    public ConnectorState createConnectorState(ConnectorRequestData connectorRequestData,
+            ConnectorMessage connectorMessage) {
+        return delegate.createConnectorState(connectorRequestData, connectorMessage);
+    }
+
+    @Override
+    public ConnectorMessage handleAsyncFlowError(Throwable exception, ConnectorMessage connectorMessage,
+            String additionalGeneralErrorMessage) {
+        return delegate.handleAsyncFlowError(exception, connectorMessage, additionalGeneralErrorMessage);
+    }
+
+    @Override
+    public String getName() {
+        return "connectorHub";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new TreeMap<>();
+        guards.forEach((kivaMethod, guard) -> stats.put(kivaMethod, guard.stats()));
+        return stats;
+    }
+
+    /**
+     * Circuit breaker and concurrency limit of one kiva method. Every method is
+     * synchronized; the guard is only held for bookkeeping, never across a call.
+     */
+    private class MethodGuard {
+
+        private final String kivaMethod;
+        private State state = State.CLOSED;
+        private long openedAtNanos;
+        private int trialCalls;
+        private int trialSuccesses;
+
+        /** The outcomes of the last windowSize calls while closed, true for a failure. */
+        private final boolean[] window;
+        private int windowCalls;
+        private int windowFailures;
+        private int windowPosition;
+
+        private double limit;
+        private int inFlight;
+
+        private long calls;
+        private long failures;
+        private long slowCalls;
+        private long rejectedOpen;
+        private long rejectedLimit;
+        private final Map<String, Long> transitions = new TreeMap<>();
+        private long lastTransitionMillis;
+
+        MethodGuard(String kivaMethod) {
+            this.kivaMethod = kivaMethod;
+            this.window = new boolean[Math.max(1, settings.getWindowSize())];
+            this.limit = Math.max(minLimit(), Math.min(maxLimit(), settings.getInitialLimit()));
+        }
+
+        /**
+         * @return null when the call may go ahead and now holds a permit, and a
+         *         trial slot while half open, or why it is rejected
+         */
+        synchronized String admit() {
+            long now = System.nanoTime();
+            if (state == State.OPEN) {
+                if (now - openedAtNanos < TimeUnit.MILLISECONDS.toNanos(settings.getOpenMillis())) {
+                    rejectedOpen++;
+                    return "circuit open";
+                }
+                transition(State.HALF_OPEN);
+                trialCalls = 0;
+                trialSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN && trialCalls >= Math.max(1, settings.getHalfOpenCalls())) {
+                rejectedOpen++;
+                return "circuit half open";
+            }
+            if (inFlight >= (int) limit) {
+                rejectedLimit++;
+                return "concurrency limit " + (int) limit + " reached";
+            }
+            inFlight++;
+            if (state == State.HALF_OPEN) {
+                trialCalls++;
+            }
+            return null;
+        }
+
+        /* Gives back the permit of a call cancelled before it was sent */
+        synchronized void cancelled() {
+            inFlight--;
+            if (state == State.HALF_OPEN && trialCalls > trialSuccesses) {
+                trialCalls--;
+            }
+        }
+
+        synchronized void release(long latencyNanos, boolean success) {
+            inFlight--;
+            calls++;
+            boolean slow = latencyNanos > TimeUnit.MILLISECONDS.toNanos(settings.getSlowCallMillis());
+            if (!success) {
+                failures++;
+            } else if (slow) {
+                slowCalls++;
+            }
+            adjustLimit(success && !slow);
+            recordOutcome(success);
+        }
+
+        private void adjustLimit(boolean fast) {
+            if (fast) {
+                // only probe upwards while the limit is actually being used
+                if (inFlight + 1 >= limit / 2) {
+                    limit = Math.min(maxLimit(), limit + 1 / limit);
+                }
+            } else {
+                limit = Math.max(minLimit(), limit * settings.getBackoffRatio());
+            }
+        }
+
+        private void recordOutcome(boolean success) {
+            if (state == State.HALF_OPEN) {
+                if (!success) {
+                    open();
+                } else if (++trialSuccesses >= Math.max(1, settings.getHalfOpenCalls())) {
+                    transition(State.CLOSED);
+                    windowCalls = 0;
+                    windowFailures = 0;
+                    windowPosition = 0;
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                return;
+            }
+            if (windowCalls == window.length) {
+                if (window[windowPosition]) {
+                    windowFailures--;
+                }
+            } else {
+                windowCalls++;
+            }
+            window[windowPosition] = !success;
+            if (!success) {
+                windowFailures++;
+            }
+            windowPosition = (windowPosition + 1) % window.length;
+            if (windowCalls >= settings.getMinCalls()
+                    && windowFailures * 100L >= (long) settings.getFailureRatePercent() * windowCalls) {
+                open();
+            }
+        }
+
+        private void open() {
+            transition(State.OPEN);
+            openedAtNanos = System.nanoTime();
+        }
+
+        private void transition(State next) {
+            log.warn("Connector hub circuit for {} went from {} to {} (limit {}, {} in flight)", kivaMethod, state,
+                    next, (int) limit, inFlight);
+            transitions.merge(state + "->" + next, 1L, Long::sum);
+            lastTransitionMillis = System.currentTimeMillis();
+            state = next;
+        }
+
+        private double minLimit() {
+            return Math.max(1, settings.getMinLimit());
+        }
+
+        private double maxLimit() {
+            return Math.max(minLimit(), settings.getMaxLimit());
+        }
+
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("state", state.name());
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("calls", calls);
+            stats.put("failures", failures);
+            stats.put("slowCalls", slowCalls);
+            stats.put("rejectedOpen", rejectedOpen);
+            stats.put("rejectedLimit", rejectedLimit);
+            stats.put("transitions", new TreeMap<>(transitions));
+            stats.put("lastTransitionMillis", lastTransitionMillis);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import coop.constellation.connectorservices.workflowexample.helpers.IdempotencyKey;
+import coop.constellation.connectorservices.workflowexample.helpers.OutcomeUnknownException;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the kiva responses of idempotent workflow runs by idempotency key,
+ * so a retried transfer or stop payment doesn't move money twice. A duplicate
+ * of a run that is still in flight waits for that run's responses; a duplicate
+ * of a completed run gets the stored responses. A failed run is forgotten, so
+ * it can be retried. A run keyed by its params rather than a client supplied
+ * key is only shared while in flight and never remembered once completed, as
+ * an identical request after that may well be a second, intended transfer.
+ *
+ * A run that gave up without learning the hub's outcome, e.g. at its deadline,
+ * may still have moved the money, so its key stays held for unknownTtlMillis:
+ * duplicates fail with an OutcomeUnknownException instead of being sent again.
+ *
+ * Completed runs are kept in memory, the least recently used evicted once
+ * maxEntries is reached, and appended as JSON lines to a journal file that is
+ * read back on startup, so a restart doesn't forget them. The journal is
+ * rewritten with only the live entries on startup and whenever it has grown to
+ * twice maxEntries lines.
+ */
+@Slf4j
+public class IdempotencyStore implements StatsSupplier, DisposableBean {
+
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final long unknownTtlMillis;
+    private final int maxEntries;
+    private final Path journal;
+    private final Map<String, CompletableFuture<List<String>>> inFlight = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Entry> completed;
+    /** Guards the journal writer; never taken while holding the store's lock. */
+    private final Object journalLock = new Object();
+    private BufferedWriter writer;
+    private long journalLines;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder attached = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder unknownOutcomes = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder journalErrors = new LongAdder();
+    private int loaded;
+
+    /**
+     * @param ttlMillis        how long a completed run with a client supplied key
+     *                         is remembered
+     * @param unknownTtlMillis how long a run whose outcome is unknown holds its
+     *                         key
+     * @param journal          the journal file, or null to keep runs in memory
+     *                         only
+     */
+    public IdempotencyStore(ObjectMapper mapper, boolean enabled, long ttlMillis, long unknownTtlMillis,
+            int maxEntries, Path journal) throws IOException {
+        this.mapper = mapper;
+        this.enabled = enabled;
+        this.ttlMillis = ttlMillis;
+        this.unknownTtlMillis = unknownTtlMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.journal = enabled ? journal : null;
+        this.completed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > IdempotencyStore.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (this.journal != null) {
+            load();
+            synchronized (journalLock) {
+                compact();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Claims the run for the key unless another run holds it.
+     *
+     * @return null when the caller is the first and must make the kiva call, then
+     *         report it with complete, fail or unknown; otherwise the responses
+     *         of the run that holds the key
+     */
+    public synchronized CompletableFuture<List<String>> claim(IdempotencyKey key) {
+        Entry entry = completed.get(key.getValue());
+        if (entry != null) {
+            if (entry.expiresAt >= System.currentTimeMillis()) {
+                if (entry.responses == null) {
+                    blocked.increment();
+                    return CompletableFuture.failedFuture(unknownOutcome());
+                }
+                replayed.increment();
+                return CompletableFuture.completedFuture(entry.responses);
+            }
+            completed.remove(key.getValue());
+        }
+        CompletableFuture<List<String>> running = inFlight.get(key.getValue());
+        if (running != null) {
+            attached.increment();
+            return running;
+        }
+        inFlight.put(key.getValue(), new CompletableFuture<>());
+        executions.increment();
+        return null;
+    }
+
+    public void complete(IdempotencyKey key, List<String> responses) {
+        Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(responses)),
+                System.currentTimeMillis() + ttlMillis);
+        CompletableFuture<List<String>> running;
+        synchronized (this) {
+            if (key.isClientSupplied()) {
+                completed.put(key.getValue(), entry);
+            }
+            running = inFlight.remove(key.getValue());
+        }
+        if (key.isClientSupplied()) {
+            append(key.getValue(), entry);
+        }
+        if (running != null) {
+            running.complete(entry.responses);
+        }
+    }
+
+    /**
+     * Records that the run gave up without learning whether the hub carried it
+     * out, so its key is held rather than freed for a retry.
+     */
+    public void unknown(IdempotencyKey key) {
+        Entry entry = new Entry(null, System.currentTimeMillis() + unknownTtlMillis);
+        CompletableFuture<List<String>> running;
+        synchronized (this) {
+            completed.put(key.getValue(), entry);
+            running = inFlight.remove(key.getValue());
+        }
+        unknownOutcomes.increment();
+        append(key.getValue(), entry);
+        if (running != null) {
+            running.completeExceptionally(unknownOutcome());
+        }
+    }
+
+    private static OutcomeUnknownException unknownOutcome() {
+        return new OutcomeUnknownException("An earlier request with the same idempotency key may have been carried "
+                + "out; its outcome is unknown");
+    }
+
+    public void fail(IdempotencyKey key, Throwable exception) {
+        CompletableFuture<List<String>> running;
+        synchronized (this) {
+            running = inFlight.remove(key.getValue());
+        }
+        failures.increment();
+        if (running != null) {
+            running.completeExceptionally(exception);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode record;
+                try {
+                    record = mapper.readTree(line);
+                } catch (IOException e) {
+                    // a line cut short by a crash
+                    log.warn("Skipping unreadable idempotency journal line in {}", journal);
+                    continue;
+                }
+                long expiresAt = record.path("expiresAt").asLong();
+                if (expiresAt < now) {
+                    continue;
+                }
+                List<String> responses = null;
+                if (!record.path("responses").isNull()) {
+                    List<String> stored = new ArrayList<>();
+                    record.path("responses").forEach(response -> stored.add(response.asText()));
+                    responses = Collections.unmodifiableList(stored);
+                }
+                synchronized (this) {
+                    completed.put(record.path("key").asText(), new Entry(responses, expiresAt));
+                }
+            }
+        }
+        synchronized (this) {
+            loaded = completed.size();
+        }
+        log.info("Loaded {} idempotent runs from {}", loaded, journal);
+    }
+
+    private void append(String key, Entry entry) {
+        if (journal == null) {
+            return;
+        }
+        synchronized (journalLock) {
+            try {
+                if (writer == null) {
+                    // a failed compaction left no journal to append to
+                    journalErrors.increment();
+                    return;
+                }
+                writer.write(toLine(key, entry));
+                writer.newLine();
+                writer.flush();
+                if (++journalLines >= 2L * maxEntries) {
+                    compact();
+                }
+            } catch (IOException e) {
+                journalErrors.increment();
+                log.error("Could not append to the idempotency journal {}", journal, e);
+            }
+        }
+    }
+
+    /* Rewrites the journal with the live entries and reopens it for appending. Called holding journalLock. */
+    private void compact() throws IOException {
+        Map<String, Entry> live;
+        synchronized (this) {
+            live = new LinkedHashMap<>(completed);
+        }
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        Path parent = journal.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path rewritten = journal.resolveSibling(journal.getFileName() + ".tmp");
+        long now = System.currentTimeMillis();
+        long lines = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(rewritten, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : live.entrySet()) {
+                if (entry.getValue().expiresAt >= now) {
+                    out.write(toLine(entry.getKey(), entry.getValue()));
+                    out.newLine();
+                    lines++;
+                }
+            }
+        }
+        Files.move(rewritten, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journalLines = lines;
+        writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    private String toLine(String key, Entry entry) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("key", key);
+        record.put("expiresAt", entry.expiresAt);
+        record.put("responses", entry.responses);
+        return mapper.writeValueAsString(record);
+    }
+
+    @Override
+    public String getName() {
+        return "idempotency";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("size", completed.size());
+            stats.put("inFlight", inFlight.size());
+            stats.put("loaded", loaded);
+        }
+        stats.put("executions", executions.sum());
+        stats.put("dedupeHits", replayed.sum() + attached.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("attached", attached.sum());
+        stats.put("failures", failures.sum());
+        stats.put("unknownOutcomes", unknownOutcomes.sum());
+        stats.put("blocked", blocked.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("journalErrors", journalErrors.sum());
+        return stats;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        synchronized (journalLock) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    private static class Entry {
+        /** null while the run's outcome is unknown */
+        private final List<String> responses;
+        private final long expiresAt;
+
+        Entry(List<String> responses, long expiresAt) {
+            this.responses = responses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
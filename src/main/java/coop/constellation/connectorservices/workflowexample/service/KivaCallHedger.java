@@ -0,0 +1,274 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.LatencyHistogram;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent kiva reads against tail latency. When a call to one of the
+ * hedged methods has not completed after the method's live p95, an identical
+ * second call is made; whichever succeeds first answers, and the other is
+ * cancelled. The p95 is taken over the current window of calls, and until a
+ * method has minSamples calls nothing is hedged.
+ *
+ * Hedges are paid for from a budget that every hedged-method call adds
+ * budgetPercent / 100 of a hedge to, up to budgetBurst hedges, so at most about
+ * budgetPercent extra calls are made however slow kivapublic gets.
+ *
+ * A loser cancelled before its request was sent sends nothing. The connector
+ * hub can't take back a request that is already out, so a loser past that
+ * point waits for its response and holds its place under the connector hub
+ * guard's limit until it arrives.
+ */
+@Service
+public class KivaCallHedger implements StatsSupplier, DisposableBean {
+
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** The budget in hundredths of a hedge. */
+    private static final long HEDGE_COST = 100;
+
+    private final boolean enabled;
+    private final Set<String> methods;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long minSamples;
+    private final long windowNanos;
+    private final long budgetPercent;
+    private final long maxBudget;
+    private final AtomicLong budget;
+    private final Map<String, MethodHedging> hedging = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    public KivaCallHedger(@Value("${workflow.hedge.enabled:false}") boolean enabled,
+            @Value("${workflow.hedge.methods:getAccounts,getPartyById,getTransactionCategories}") Set<String> methods,
+            @Value("${workflow.hedge.percentile:0.95}") double percentile,
+            @Value("${workflow.hedge.min-delay-ms:5}") long minDelayMillis,
+            @Value("${workflow.hedge.min-samples:100}") long minSamples,
+            @Value("${workflow.hedge.window-ms:60000}") long windowMillis,
+            @Value("${workflow.hedge.budget-percent:5}") long budgetPercent,
+            @Value("${workflow.hedge.budget-burst:10}") long budgetBurst) {
+        this.enabled = enabled;
+        this.methods = methods;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minDelayMillis));
+        this.minSamples = Math.max(1, minSamples);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, windowMillis));
+        this.budgetPercent = Math.max(0, budgetPercent);
+        this.maxBudget = Math.max(1, budgetBurst) * HEDGE_COST;
+        this.budget = new AtomicLong(maxBudget);
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "kiva-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isHedged(String kivaMethod) {
+        return enabled && methods.contains(kivaMethod);
+    }
+
+    /**
+     * Makes the call, and a second identical one once the first has taken longer
+     * than the method's p95 and the budget allows.
+     *
+     * @param call starts one call; it is invoked a second time for the hedge
+     * @return the result of the first call to succeed, or the failure of the last
+     *         one when every call failed
+     */
+    public <T> CompletableFuture<T> hedge(String kivaMethod, Supplier<CompletableFuture<T>> call) {
+        MethodHedging method = hedging.computeIfAbsent(kivaMethod, name -> new MethodHedging());
+        deposit();
+        long delay = method.delayNanos();
+        CompletableFuture<T> primary = method.timed(call);
+        if (delay < 0 || primary.isDone()) {
+            return primary;
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicReference<CompletableFuture<T>> second = new AtomicReference<>();
+        settle(primary, result, pending, null);
+        ScheduledFuture<?> alarm;
+        try {
+            alarm = timer.schedule(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                if (!withdraw()) {
+                    method.budgetExhausted.increment();
+                    return;
+                }
+                method.hedged.increment();
+                pending.incrementAndGet();
+                CompletableFuture<T> hedge;
+                try {
+                    hedge = method.timed(call);
+                } catch (RuntimeException e) {
+                    if (pending.decrementAndGet() == 0) {
+                        result.completeExceptionally(e);
+                    }
+                    return;
+                }
+                second.set(hedge);
+                settle(hedge, result, pending, method.hedgeWins);
+                if (result.isDone()) {
+                    hedge.cancel(false);
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            return primary;
+        }
+        result.whenComplete((value, exception) -> {
+            alarm.cancel(false);
+            // the loser, or both when the caller gave up on the result
+            primary.cancel(false);
+            CompletableFuture<T> hedge = second.get();
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    private static <T> void settle(CompletableFuture<T> attempt, CompletableFuture<T> result, AtomicInteger pending,
+            LongAdder wins) {
+        attempt.whenComplete((value, exception) -> {
+            if (exception == null) {
+                if (result.complete(value) && wins != null) {
+                    wins.increment();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(exception);
+            }
+        });
+    }
+
+    private void deposit() {
+        budget.accumulateAndGet(budgetPercent, (current, amount) -> Math.min(maxBudget, current + amount));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - HEDGE_COST));
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "hedging";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("budget", budget.get() / (double) HEDGE_COST);
+        Map<String, Object> methodStats = new TreeMap<>();
+        hedging.forEach((kivaMethod, method) -> methodStats.put(kivaMethod, method.stats()));
+        stats.put("methods", methodStats);
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Latency of one hedged method's calls and the hedge delay taken from it. The
+     * histogram is replaced every window; the delay keeps the previous window's
+     * value until the new one has minSamples calls.
+     */
+    private final class MethodHedging {
+
+        private volatile LatencyHistogram window = new LatencyHistogram();
+        private volatile long windowStartNanos = System.nanoTime();
+        private volatile long delayNanos = -1;
+        private volatile long refreshedNanos = System.nanoTime() - REFRESH_NANOS;
+
+        final LongAdder hedged = new LongAdder();
+        final LongAdder hedgeWins = new LongAdder();
+        final LongAdder budgetExhausted = new LongAdder();
+
+        <T> CompletableFuture<T> timed(Supplier<CompletableFuture<T>> call) {
+            long started = System.nanoTime();
+            CompletableFuture<T> attempt = call.get();
+            attempt.whenComplete((value, exception) -> {
+                if (exception == null) {
+                    record(System.nanoTime() - started);
+                }
+            });
+            return attempt;
+        }
+
+        private void record(long nanos) {
+            long now = System.nanoTime();
+            if (now - windowStartNanos >= windowNanos) {
+                synchronized (this) {
+                    if (now - windowStartNanos >= windowNanos) {
+                        window = new LatencyHistogram();
+                        windowStartNanos = now;
+                    }
+                }
+            }
+            window.recordNanos(nanos);
+        }
+
+        /**
+         * @return how long to wait before hedging, or -1 while too few calls were
+         *         seen
+         */
+        long delayNanos() {
+            long now = System.nanoTime();
+            if (now - refreshedNanos >= REFRESH_NANOS) {
+                synchronized (this) {
+                    if (now - refreshedNanos >= REFRESH_NANOS) {
+                        LatencyHistogram current = window;
+                        if (current.getCount() >= minSamples) {
+                            delayNanos = Math.max(minDelayNanos,
+                                    TimeUnit.MICROSECONDS.toNanos(current.percentileMicros(percentile)));
+                        }
+                        refreshedNanos = now;
+                    }
+                }
+            }
+            return delayNanos;
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long delay = delayNanos;
+            stats.put("delayMs", delay < 0 ? null : Math.round(delay / 10000.0) / 100.0);
+            stats.put("windowCalls", window.getCount());
+            stats.put("hedged", hedged.sum());
+            stats.put("hedgeWins", hedgeWins.sum());
+            stats.put("budgetExhausted", budgetExhausted.sum());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
+import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
+import com.xtensifi.connectorservices.common.workflow.ConnectorState;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.helpers.Deadline;
+import coop.constellation.connectorservices.workflowexample.helpers.DeadlineExceededException;
+import coop.constellation.connectorservices.workflowexample.helpers.IdempotencyKey;
+import coop.constellation.connectorservices.workflowexample.helpers.KivaRequest;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs single kivapublic calls through the connector hub for the workflow
+ * pipelines. Cacheable reads are answered from the response cache when a live
+ * entry exists, identical reads that are already in flight share one hub
+ * round trip instead of starting another, and slow reads of hedged methods are
+ * raced against a second call.
+ */
+@Service
+@RequiredArgsConstructor
+public class KivaCallService implements StatsSupplier {
+
+    private final GuardedConnectorHubService connectorHubService;
+    private final ResponseCache responseCache;
+    private final WorkflowTimeouts workflowTimeouts;
+    private final KivaCallHedger kivaCallHedger;
+    private final IdempotencyStore idempotencyStore;
+
+    @Value("${workflow.coalesce.methods:getAccounts,getTransactions,getTransactionCategories,getPartyById}")
+    private Set<String> coalescedMethods;
+
+    private final Map<KivaRequest, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hubCalls = new LongAdder();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    /**
+     * Makes the kiva call and waits for its response on the given executor,
+     * timing each stage under the given workflow method's stages. The call gets
+     * its kiva method's budget, cut short by the request's deadline.
+     *
+     * @return a future connector state holding the kiva response(s) and bound to
+     *         the given connector message, failed with a DeadlineExceededException
+     *         when the call runs out of time
+     */
+    public CompletableFuture<ConnectorState> call(ConnectorMessage connectorMessage, KivaRequest request,
+            Executor executor, StageTimings.Stages stages, Deadline requestDeadline) {
+        Deadline deadline = workflowTimeouts.forKivaCall(requestDeadline, request.getMethod());
+        return workflowTimeouts.within(start(connectorMessage, request, executor, stages, deadline), deadline,
+                request.getMethod(), executor);
+    }
+
+    /**
+     * Like call, but the kiva call is made once per idempotency key: a request
+     * with the key of a run in flight waits for that run, and one with the key of
+     * a completed run gets its stored responses. A run that ran out of time, or
+     * was cancelled, may still land at the hub, so its key stays held. Without a
+     * key the call is made as by call.
+     */
+    public CompletableFuture<ConnectorState> callIdempotent(ConnectorMessage connectorMessage, KivaRequest request,
+            IdempotencyKey key, Executor executor, StageTimings.Stages stages, Deadline requestDeadline) {
+        if (key == null || !idempotencyStore.isEnabled()) {
+            return call(connectorMessage, request, executor, stages, requestDeadline);
+        }
+        CompletableFuture<List<String>> earlier = idempotencyStore.claim(key);
+        if (earlier != null) {
+            return workflowTimeouts.within(earlier.thenApplyAsync(
+                    stages.time("deduplicated", responses -> toConnectorState(connectorMessage, request, responses)),
+                    executor), workflowTimeouts.forKivaCall(requestDeadline, request.getMethod()), request.getMethod(),
+                    executor);
+        }
+        CompletableFuture<ConnectorState> call;
+        try {
+            call = call(connectorMessage, request, executor, stages, requestDeadline);
+        } catch (RuntimeException e) {
+            idempotencyStore.fail(key, e);
+            throw e;
+        }
+        call.whenComplete((connectorState, exception) -> {
+            Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                    ? exception.getCause()
+                    : exception;
+            if (cause instanceof DeadlineExceededException || cause instanceof CancellationException) {
+                idempotencyStore.unknown(key);
+            } else if (exception != null) {
+                idempotencyStore.fail(key, exception);
+            } else {
+                idempotencyStore.complete(key, getResponses(connectorState));
+            }
+        });
+        return call;
+    }
+
+    private CompletableFuture<ConnectorState> start(ConnectorMessage connectorMessage, KivaRequest request,
+            Executor executor, StageTimings.Stages stages, Deadline deadline) {
+        if (responseCache.isCacheable(request)) {
+            List<String> cached = responseCache.get(request);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached).thenApplyAsync(
+                        stages.time("cached", responses -> toConnectorState(connectorMessage, request, responses)),
+                        executor);
+            }
+        }
+        if (request.hasUser() && coalescedMethods.contains(request.getMethod())) {
+            return callShared(connectorMessage, request, executor, stages);
+        }
+        return fetch(connectorMessage, request, executor, stages, deadline);
+    }
+
+    /**
+     * The first caller for a request starts the hub call; callers arriving while it
+     * is in flight wait for the same responses and get their own connector state.
+     * No caller owns the shared call: it runs on its kiva method's budget, and a
+     * caller whose deadline passes, the first one included, only stops waiting
+     * for it. The entry is removed before it completes, so later callers never
+     * see an older response than a fresh call would return.
+     */
+    private CompletableFuture<ConnectorState> callShared(ConnectorMessage connectorMessage, KivaRequest request,
+            Executor executor, StageTimings.Stages stages) {
+        CompletableFuture<List<String>> leader = new CompletableFuture<>();
+        CompletableFuture<List<String>> shared = inFlight.putIfAbsent(request, leader);
+        if (shared != null) {
+            coalescedCalls.increment();
+            return shared.thenApplyAsync(
+                    stages.time("coalesced", responses -> toConnectorState(connectorMessage, request, responses)),
+                    executor);
+        }
+
+        CompletableFuture<ConnectorState> call = fetch(connectorMessage, request, executor, stages,
+                workflowTimeouts.forKivaCall(Deadline.none(), request.getMethod()));
+        call.whenComplete((connectorState, exception) -> {
+            inFlight.remove(request, leader);
+            if (exception != null) {
+                leader.completeExceptionally(exception);
+            } else {
+                leader.complete(getResponses(connectorState));
+            }
+        });
+        // cancelling the first caller's copy leaves the shared call running
+        return call.thenApply(Function.identity());
+    }
+
+    private CompletableFuture<ConnectorState> fetch(ConnectorMessage connectorMessage, KivaRequest request,
+            Executor executor, StageTimings.Stages stages, Deadline deadline) {
+        if (!responseCache.isCacheable(request)) {
+            return callHub(connectorMessage, request, executor, stages, deadline);
+        }
+        long generation = responseCache.generation();
+        CompletableFuture<ConnectorState> call = callHub(connectorMessage, request, executor, stages, deadline);
+        // cached on the side, so cancelling the returned future reaches the call as it does uncached
+        call.thenAccept(connectorState -> responseCache.put(request, generation, getResponses(connectorState)));
+        return call;
+    }
+
+    /**
+     * Drops cached reads that a write to the given accounts makes stale, and
+     * keeps reads already in flight for the user from being cached.
+     */
+    public void invalidate(ConnectorMessage connectorMessage, Collection<String> accountIds) {
+        responseCache.invalidate(KivaRequest.getOrg(connectorMessage), KivaRequest.getUserId(connectorMessage),
+                accountIds);
+    }
+
+    private CompletableFuture<ConnectorState> callHub(ConnectorMessage connectorMessage, KivaRequest request,
+            Executor executor, StageTimings.Stages stages, Deadline deadline) {
+        if (kivaCallHedger.isHedged(request.getMethod())) {
+            return kivaCallHedger.hedge(request.getMethod(),
+                    () -> callHubOnce(connectorMessage, request, executor, stages, deadline));
+        }
+        return callHubOnce(connectorMessage, request, executor, stages, deadline);
+    }
+
+    private CompletableFuture<ConnectorState> callHubOnce(ConnectorMessage connectorMessage, KivaRequest request,
+            Executor executor, StageTimings.Stages stages, Deadline deadline) {
+        hubCalls.increment();
+        ConnectorRequestData connectorRequestData = request.toConnectorRequestData();
+        return connectorHubService.guarded(connectorRequestData, permit -> stages.time("init",
+                connectorHubService.initAsyncConnectorRequest(connectorMessage, connectorRequestData))
+                .thenApply(stages.time("params", connectorRequestParams -> {
+                    request.getParams().forEach(connectorRequestParams::addNameValue);
+                    return connectorRequestParams;
+                }))
+                .thenApply(stages.time("call", permit.beforeSending(connectorHubService.callConnectorAsync())))
+                .thenApplyAsync(stages.time("wait", permit.whileWaiting(
+                        workflowTimeouts.interruptible(deadline, "wait", connectorHubService.waitForConnectorResponse()))),
+                        executor));
+    }
+
+    /**
+     * Builds a connector state for the given message that carries the given kiva
+     * responses, as if the call had just been made for it.
+     */
+    ConnectorState toConnectorState(ConnectorMessage connectorMessage, KivaRequest request, List<String> responses) {
+        ConnectorRequestData connectorRequestData = request.toConnectorRequestData();
+        ConnectorState connectorState = connectorHubService.createConnectorState(connectorRequestData,
+                connectorMessage);
+        responses.forEach(response -> connectorState.addResponse(new ConnectorResponse(connectorRequestData, response)));
+        return connectorState;
+    }
+
+    @Override
+    public String getName() {
+        return "kivaCalls";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hubCalls", hubCalls.sum());
+        stats.put("coalescedCalls", coalescedCalls.sum());
+        stats.put("inFlightShared", inFlight.size());
+        return stats;
+    }
+
+    static List<String> getResponses(ConnectorState connectorState) {
+        return connectorState.getConnectorResponseList().getResponses().stream()
+                .map(ConnectorResponse::getResponse)
+                .collect(Collectors.toList());
+    }
+}
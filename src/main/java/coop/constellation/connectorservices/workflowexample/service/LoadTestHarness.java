@@ -0,0 +1,239 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.helpers.MockHubCompletions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the workflow endpoints of the running connector at a fixed request
+ * rate and logs throughput, latency percentiles and pool saturation per
+ * endpoint. Runs with the local profile so kiva calls go to the mock hub:
+ *
+ * <pre>
+ * --spring.profiles.active=local,loadtest
+ * </pre>
+ *
+ * Latency is measured from when a request was due to be sent until the mock
+ * hub saw the workflow complete or fail, so a backed up connector shows up in
+ * the numbers instead of slowing down the load.
+ */
+@Slf4j
+@Component
+@Profile("loadtest")
+@RequiredArgsConstructor
+public class LoadTestHarness implements CommandLineRunner {
+
+    private static final String BASE_PATH = "/externalConnector/workflowMethodExample/1.0/";
+    private static final String DEFAULT_ENDPOINTS = "retrieveAccountList,retrieveAccountListRefresh,"
+            + "retrieveTransactionList,retrieveUserBySocial,retrieveUserById,retrieveTransactionCategories,"
+            + "editTransaction,startTransfer,p2pTransfer,stopPayment,validateMemberAccountInfo,multiCall";
+
+    private final Environment env;
+    private final MockHubCompletions completions;
+    private final WorkflowExecutorsImpl workflowExecutors;
+    private final ConfigurableApplicationContext context;
+
+    private final AtomicLong requestIds = new AtomicLong();
+
+    @Override
+    public void run(String... args) throws Exception {
+        int rps = env.getProperty("loadtest.rps", Integer.class, 50);
+        int warmupSeconds = env.getProperty("loadtest.warmup-seconds", Integer.class, 5);
+        int durationSeconds = env.getProperty("loadtest.duration-seconds", Integer.class, 30);
+        int users = env.getProperty("loadtest.users", Integer.class, 100);
+        Duration requestTimeout = Duration
+                .ofMillis(env.getProperty("loadtest.request-timeout-ms", Long.class, 10000L));
+        List<String> endpoints = Arrays.asList(env.getProperty("loadtest.endpoints", DEFAULT_ENDPOINTS).split(","));
+        String baseUrl = "http://localhost:"
+                + env.getProperty("local.server.port", env.getProperty("server.port", "8080")) + BASE_PATH;
+
+        Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        endpoints.forEach(endpoint -> stats.put(endpoint, new EndpointStats()));
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> samplePools(stats), 0, 200, TimeUnit.MILLISECONDS);
+
+        log.info("Load test: {} rps over {} endpoints, {}s warmup, {}s measured", rps, endpoints.size(),
+                warmupSeconds, durationSeconds);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long sequence = 0;
+        for (long due = start; due < end; due = start + ++sequence * intervalNanos) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String endpoint = endpoints.get((int) (sequence % endpoints.size()));
+            EndpointStats endpointStats = due >= measureFrom ? stats.get(endpoint) : null;
+            send(client, baseUrl + endpoint, "user-" + sequence % users, due, requestTimeout, endpointStats);
+        }
+
+        // let the stragglers finish or time out before reporting
+        Thread.sleep(requestTimeout.toMillis());
+        sampler.shutdown();
+        report(stats, durationSeconds);
+
+        if (env.getProperty("loadtest.exit-when-done", Boolean.class, true)) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+
+    private void send(HttpClient client, String url, String userId, long dueNanos, Duration requestTimeout,
+            EndpointStats endpointStats) {
+        String requestId = Long.toString(requestIds.incrementAndGet());
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(connectorMessageJson(requestId, userId)))
+                .build();
+        if (endpointStats != null) {
+            endpointStats.sent.increment();
+        }
+        CompletableFuture<ConnectorMessage> completion = completions.expect(requestId);
+        completion.orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((connectorMessage, exception) -> {
+                    completions.forget(requestId);
+                    if (endpointStats != null) {
+                        endpointStats.record(System.nanoTime() - dueNanos, exception);
+                    }
+                });
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, exception) -> {
+                    if (exception != null || response.statusCode() >= 300) {
+                        // the workflow never started, fail the wait right away
+                        completion.completeExceptionally(exception != null ? exception
+                                : new IllegalStateException("HTTP " + response.statusCode()));
+                    }
+                });
+    }
+
+    /**
+     * A connector message carrying every param the workflow endpoints read. The
+     * user varies so the response cache sees a realistic mix of hits and misses.
+     */
+    private static String connectorMessageJson(String requestId, String userId) {
+        return "{\"externalServicePayload\":{\"userData\":{\"userId\":\"" + userId + "\"},"
+                + "\"payload\":{\"valuePair\":["
+                + valuePair(MockHubCompletions.REQUEST_ID_PARAM, requestId) + ","
+                + valuePair("accountId", userId + "-S0001") + ","
+                + valuePair("accountFrom", userId + "-S0001") + ","
+                + valuePair("accountTo", userId + "-S0002") + ","
+                + valuePair("transferAmount", "25.00") + ","
+                + valuePair("transferMemo", "load test") + ","
+                + valuePair("transactionId", "T" + requestId) + ","
+                + valuePair("holdAmount", "10.00") + ","
+                + valuePair("checkNumber", "1001") + ","
+                + valuePair("memberId", userId) + ","
+                + valuePair("firstThreeOfLastName", "DOE")
+                + "]}},"
+                + "\"connectorParametersResponse\":{\"parameters\":{\"valuePair\":["
+                + valuePair("org", "loadtest") + "]}}}";
+    }
+
+    private static String valuePair(String name, String value) {
+        return "{\"name\":\"" + name + "\",\"value\":\"" + value + "\"}";
+    }
+
+    @SuppressWarnings("unchecked")
+    private void samplePools(Map<String, EndpointStats> stats) {
+        Map<String, Object> pools = workflowExecutors.get();
+        stats.forEach((endpoint, endpointStats) -> {
+            Object pool = pools.get(endpoint);
+            if (pool instanceof Map) {
+                endpointStats.samplePool((Map<String, Object>) pool);
+            }
+        });
+    }
+
+    private void report(Map<String, EndpointStats> stats, int durationSeconds) {
+        log.info(String.format("%-30s %7s %7s %7s %7s %8s %9s %9s %9s %9s %7s %7s %8s", "endpoint", "sent", "ok",
+                "errors", "timeout", "rps", "p50 ms", "p90 ms", "p99 ms", "max ms", "active", "queue", "rejected"));
+        stats.forEach((endpoint, endpointStats) -> {
+            long[] latencies = endpointStats.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            log.info(String.format("%-30s %7d %7d %7d %7d %8.1f %9.1f %9.1f %9.1f %9.1f %7d %7d %8d", endpoint,
+                    endpointStats.sent.sum(), endpointStats.ok.sum(), endpointStats.errors.sum(),
+                    endpointStats.timeouts.sum(), (double) endpointStats.ok.sum() / durationSeconds,
+                    percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.90),
+                    percentileMillis(latencies, 0.99), percentileMillis(latencies, 1.0),
+                    endpointStats.peakActiveThreads, endpointStats.peakQueueDepth, endpointStats.rejected));
+        });
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static class EndpointStats {
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private volatile int peakActiveThreads;
+        private volatile int peakQueueDepth;
+        private volatile long rejected;
+
+        void record(long latencyNanos, Throwable exception) {
+            Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+            if (cause == null) {
+                ok.increment();
+                latencies.add(latencyNanos);
+            } else if (cause instanceof TimeoutException) {
+                timeouts.increment();
+            } else {
+                errors.increment();
+            }
+        }
+
+        /** Only called from the sampler thread; counts an executor mode doesn't report are left alone. */
+        void samplePool(Map<String, Object> pool) {
+            Object activeThreads = pool.get("activeThreads");
+            if (activeThreads instanceof Number) {
+                peakActiveThreads = Math.max(peakActiveThreads, ((Number) activeThreads).intValue());
+            }
+            Object queueDepth = pool.get("queueDepth");
+            if (queueDepth instanceof Number) {
+                peakQueueDepth = Math.max(peakQueueDepth, ((Number) queueDepth).intValue());
+            }
+            Object rejectedCount = pool.get("rejected");
+            if (rejectedCount instanceof Number) {
+                rejected = ((Number) rejectedCount).longValue();
+            }
+        }
+    }
+}
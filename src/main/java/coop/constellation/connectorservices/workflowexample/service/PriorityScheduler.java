@@ -0,0 +1,275 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.LatencyHistogram;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * One thread pool shared by every workflow method, whose queue hands out the
+ * stages of higher priority classes first. Classes are listed highest first in
+ * workflow.priority.classes, and each lists its workflow methods in
+ * workflow.priority.<class>.methods; other methods get
+ * workflow.priority.default-class.
+ *
+ * A queued stage is promoted one class for every agingMillis it waits, so a
+ * steady stream of transfers can hold a background refresh back by at most
+ * agingMillis per class between them, but never starve it.
+ *
+ * Stages mostly block on the connector hub, so the classes below the highest
+ * must not be able to take every thread. Each class down the list may only
+ * start a stage while fewer than pool size - reservedThreads * its position
+ * threads are busy; a stage past that is parked until a thread frees up.
+ */
+class PriorityScheduler {
+
+    static final String PROPERTY_PREFIX = "workflow.priority.";
+
+    /** Methods of the default classes when workflow.priority.<class>.methods is not set. */
+    private static final Map<String, String> DEFAULT_METHODS = Map.of(
+            "transactional", "startTransfer,p2pTransfer,stopPayment",
+            "background", "retrieveAccountListRefresh");
+
+    private final List<String> classes;
+    private final String defaultClass;
+    private final Map<String, Set<String>> classMethods = new LinkedHashMap<>();
+    private final long agingNanos;
+    private final int queueCapacity;
+    private final int poolSize;
+    private final int reservedThreads;
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, ClassStats> classStats = new LinkedHashMap<>();
+    /* Highest class first, indexed by rank */
+    private final List<ClassStats> ranked = new ArrayList<>();
+    /* Guarded by ranked */
+    private int running;
+
+    PriorityScheduler(Environment env) {
+        this.classes = Collections.unmodifiableList(Arrays.stream(
+                env.getProperty(PROPERTY_PREFIX + "classes", String[].class,
+                        new String[] { "transactional", "interactive", "background" }))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList()));
+        if (classes.isEmpty()) {
+            throw new IllegalStateException(PROPERTY_PREFIX + "classes needs at least one priority class");
+        }
+        String configuredDefault = env.getProperty(PROPERTY_PREFIX + "default-class", "interactive");
+        this.defaultClass = classes.contains(configuredDefault) ? configuredDefault : classes.get(classes.size() / 2);
+        for (String priorityClass : classes) {
+            classMethods.put(priorityClass, Arrays.stream(env.getProperty(PROPERTY_PREFIX + priorityClass + ".methods",
+                    String[].class, DEFAULT_METHODS.getOrDefault(priorityClass, "").split(",")))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .collect(Collectors.toUnmodifiableSet()));
+            ClassStats stats = new ClassStats(ranked.size());
+            classStats.put(priorityClass, stats);
+            ranked.add(stats);
+        }
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(1, env.getProperty(PROPERTY_PREFIX + "aging-ms", Long.class, 200L)));
+        this.queueCapacity = env.getProperty(WorkflowExecutorsImpl.PROPERTY_PREFIX + "priority.queue-capacity",
+                Integer.class, 2000);
+        this.poolSize = Math.max(1, env.getProperty(WorkflowExecutorsImpl.PROPERTY_PREFIX + "priority.pool-size",
+                Integer.class, 64));
+        this.reservedThreads = Math.max(0, env.getProperty(
+                WorkflowExecutorsImpl.PROPERTY_PREFIX + "priority.reserved-threads", Integer.class, poolSize / 8));
+        AtomicInteger count = new AtomicInteger();
+        // the queue is unbounded, so the pool never grows past its core size; capacity is enforced in execute
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "wf-priority-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the priority class the workflow method's stages run in
+     */
+    String classOf(String workflowMethod) {
+        for (Map.Entry<String, Set<String>> entry : classMethods.entrySet()) {
+            if (entry.getValue().contains(workflowMethod)) {
+                return entry.getKey();
+            }
+        }
+        return defaultClass;
+    }
+
+    /**
+     * Queues the task in the given class.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    void execute(String priorityClass, Runnable task) {
+        ClassStats stats = classStats.get(priorityClass);
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            stats.rejected.increment();
+            throw new RejectedExecutionException("Priority workflow executor is saturated");
+        }
+        stats.queued.incrementAndGet();
+        try {
+            pool.execute(new PrioritizedTask(task, stats));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            stats.queued.decrementAndGet();
+            stats.rejected.increment();
+            throw e;
+        }
+    }
+
+    /* Threads the class may keep busy, leaving reservedThreads per class above it */
+    private int threadLimit(ClassStats priorityClass) {
+        return Math.max(1, poolSize - reservedThreads * priorityClass.rank);
+    }
+
+    /**
+     * @return false when the task's class is at its thread limit; the task is
+     *         then parked and queued again once a thread frees up
+     */
+    private boolean tryStart(PrioritizedTask task) {
+        synchronized (ranked) {
+            if (running < threadLimit(task.stats)) {
+                running++;
+                return true;
+            }
+            task.stats.parked.add(task);
+            return false;
+        }
+    }
+
+    /* Hands a freed thread to the highest parked task whose class may use it */
+    private void finished() {
+        PrioritizedTask next = null;
+        synchronized (ranked) {
+            running--;
+            for (ClassStats priorityClass : ranked) {
+                if (!priorityClass.parked.isEmpty() && running < threadLimit(priorityClass)) {
+                    next = priorityClass.parked.poll();
+                    running++;
+                    break;
+                }
+            }
+        }
+        if (next != null) {
+            next.started = true;
+            try {
+                pool.execute(next);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                synchronized (ranked) {
+                    running--;
+                }
+            }
+        }
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeThreads", pool.getActiveCount());
+        stats.put("poolSize", pool.getPoolSize());
+        stats.put("maxPoolSize", pool.getMaximumPoolSize());
+        stats.put("queueDepth", queued.get());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("reservedThreads", reservedThreads);
+        Map<String, Object> perClass = new LinkedHashMap<>();
+        classStats.forEach((priorityClass, counts) -> {
+            Map<String, Object> classCounts = new LinkedHashMap<>();
+            classCounts.put("queueDepth", counts.queued.get());
+            classCounts.put("threadLimit", threadLimit(counts));
+            synchronized (ranked) {
+                classCounts.put("parked", counts.parked.size());
+            }
+            classCounts.put("executed", counts.executed.sum());
+            classCounts.put("rejected", counts.rejected.sum());
+            classCounts.put("queueTime", counts.queueTime.snapshot());
+            perClass.put(priorityClass, classCounts);
+        });
+        stats.put("classes", perClass);
+        return stats;
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class ClassStats {
+        final int rank;
+        final ArrayDeque<PrioritizedTask> parked = new ArrayDeque<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final LongAdder executed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LatencyHistogram queueTime = new LatencyHistogram();
+
+        ClassStats(int rank) {
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * Ordered by enqueue time pushed back by agingNanos per class below the
+     * highest. The key is fixed when the task is queued, which keeps the heap
+     * valid while still letting older low class tasks overtake newer high class
+     * ones, and a parked task keeps its place when it is queued again.
+     */
+    private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final Runnable task;
+        private final ClassStats stats;
+        private final long enqueuedAt = System.nanoTime();
+        private final long key;
+        private final long order = sequence.getAndIncrement();
+        /* Set once the task holds a thread of its class's limit */
+        private volatile boolean started;
+
+        PrioritizedTask(Runnable task, ClassStats stats) {
+            this.task = task;
+            this.stats = stats;
+            this.key = enqueuedAt + stats.rank * agingNanos;
+        }
+
+        @Override
+        public void run() {
+            if (!started && !tryStart(this)) {
+                return;
+            }
+            queued.decrementAndGet();
+            stats.queued.decrementAndGet();
+            stats.queueTime.recordNanos(System.nanoTime() - enqueuedAt);
+            stats.executed.increment();
+            try {
+                task.run();
+            } finally {
+                finished();
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            // compared by difference, as nanoTime values may wrap
+            long difference = key - other.key;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+}
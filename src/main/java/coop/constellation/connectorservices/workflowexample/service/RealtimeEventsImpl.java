@@ -11,6 +11,7 @@ import com.xtensifi.connectorservices.common.logging.ConnectorLogging;
 import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
 import com.xtensifi.dspco.ConnectorMessage;
 
+import coop.constellation.connectorservices.workflowexample.helpers.LazyLogging;
 import coop.constellation.connectorservices.workflowexample.helpers.RealtimeEvents;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -24,6 +25,28 @@ public class RealtimeEventsImpl implements RealtimeEvents {
     @Override
     public void send(String source, String eventName, List<String> affectedItems, ConnectorMessage connectorMessage,
             ConnectorLogging clog, RealtimeEventService realtimeEventService) {
+        RealtimeEventData eventData = toEventData(source, eventName, affectedItems, connectorMessage);
+
+        LazyLogging.info(clog, connectorMessage, () -> "Event being sent to Real Time Event Bus: " + toJson(eventData));
+
+        try {
+            if (realtimeEventService != null) {
+                realtimeEventService.sendEvent(eventData);
+            } else {
+                clog.error(connectorMessage, "Realtime event service is null");
+            }
+        } catch (RealtimeEventException ree) {
+            clog.error(connectorMessage,
+                    "Caught RealtimeEventException trying to send event that transaction was added" + ree.getMessage());
+        }
+
+    }
+
+    /**
+     * Builds the event for the org of the given connector message.
+     */
+    static RealtimeEventData toEventData(String source, String eventName, List<String> affectedItems,
+            ConnectorMessage connectorMessage) {
         RealtimeEventData eventData = new RealtimeEventData();
 
         eventData.setSource(source);
@@ -43,21 +66,14 @@ public class RealtimeEventsImpl implements RealtimeEvents {
 
         eventDetail.setTopicData(eventDetailTopicData);
         eventData.setDetail(eventDetail);
+        return eventData;
+    }
 
+    static String toJson(RealtimeEventData eventData) {
         try {
-            clog.info(connectorMessage, "Event being sent to Real Time Event Bus: " + eventData.toJson());
-
-            if (realtimeEventService != null) {
-                realtimeEventService.sendEvent(eventData);
-            } else {
-                clog.error(connectorMessage, "Realtime event service is null");
-            }
+            return eventData.toJson();
         } catch (JsonProcessingException jpe) {
-            clog.info(connectorMessage, "Caught exception trying to transform event data to JSON!!!");
-        } catch (RealtimeEventException ree) {
-            clog.error(connectorMessage,
-                    "Caught RealtimeEventException trying to send event that transaction was added" + ree.getMessage());
+            return "Caught exception trying to transform event data to JSON!!!";
         }
-
     }
 }
@@ -0,0 +1,165 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.KivaRequest;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user cache of kivapublic responses for read-only methods. Entries expire
+ * after a TTL and the least recently used entry is evicted once the cache is
+ * full. Writes that touch an account invalidate that user's cached responses
+ * for the account, plus their account lists since those carry balances.
+ * <p>
+ * A read that was already in flight when the user's responses were invalidated
+ * may carry data from before the write, so its response is not cached: callers
+ * take a generation before fetching and hand it back to put.
+ */
+public class ResponseCache implements StatsSupplier {
+
+    /** Read methods whose response summarises every account of the user. */
+    private static final Set<String> ACCOUNT_LIST_METHODS = Set.of("getAccounts", "getAccountsRefresh");
+
+    private final long ttlMillis;
+    private final Set<String> cacheableMethods;
+    private final LinkedHashMap<KivaRequest, Entry> entries;
+    /* Generation of each org and user's last invalidation, least recent first */
+    private final LinkedHashMap<List<String>, Long> invalidatedAt;
+    private long generation;
+    /* Newest generation dropped from invalidatedAt */
+    private long forgottenAt;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder staleDrops = new LongAdder();
+
+    public ResponseCache(long ttlMillis, int maxEntries, Set<String> cacheableMethods) {
+        this.ttlMillis = ttlMillis;
+        this.cacheableMethods = cacheableMethods;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<KivaRequest, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.invalidatedAt = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Long> eldest) {
+                if (size() > maxEntries) {
+                    forgottenAt = Math.max(forgottenAt, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isCacheable(KivaRequest request) {
+        return ttlMillis > 0 && request.hasUser() && cacheableMethods.contains(request.getMethod());
+    }
+
+    /**
+     * @return the cached response bodies, or null when there is no live entry
+     */
+    public synchronized List<String> get(KivaRequest request) {
+        Entry entry = entries.get(request);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(request);
+            expirations.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.responses;
+    }
+
+    /**
+     * @return the generation to pass to put for a response fetched from now on
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches the responses unless the request's org and user had their responses
+     * invalidated since the given generation was taken.
+     */
+    public synchronized void put(KivaRequest request, long fetchedAt, List<String> responses) {
+        Long lastInvalidated = invalidatedAt.get(List.of(request.getOrg(), request.getUserId()));
+        if ((lastInvalidated != null ? lastInvalidated : forgottenAt) > fetchedAt) {
+            staleDrops.increment();
+            return;
+        }
+        entries.put(request, new Entry(Collections.unmodifiableList(new ArrayList<>(responses)),
+                System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Drops the cached responses a write to the given accounts could have made
+     * stale.
+     */
+    public synchronized void invalidate(String org, String userId, Collection<String> accountIds) {
+        invalidatedAt.put(List.of(org, userId), ++generation);
+        Iterator<KivaRequest> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            KivaRequest request = keys.next();
+            if (!request.getOrg().equals(org) || !request.getUserId().equals(userId)) {
+                continue;
+            }
+            String accountId = request.getAccountId();
+            if ((accountId != null && accountIds.contains(accountId))
+                    || ACCOUNT_LIST_METHODS.contains(request.getMethod())) {
+                keys.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "responseCache";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("size", entries.size());
+        }
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("staleDrops", staleDrops.sum());
+        return stats;
+    }
+
+    private static class Entry {
+        private final List<String> responses;
+        private final long expiresAt;
+
+        Entry(List<String> responses, long expiresAt) {
+            this.responses = responses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.LatencyHistogram;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Latency histograms per workflow method and pipeline stage, e.g.
+ * retrieveAccountList / wait. Each stage records its execution time and, when
+ * it ran on a workflow executor, how long it sat in the executor's queue
+ * first, so time spent polling the hub, handling JSON and waiting for a thread
+ * can be told apart.
+ */
+@Service
+public class StageTimings {
+
+    /**
+     * Queue time of the workflow executor task running on this thread, or -1 once
+     * a stage has claimed it.
+     */
+    private static final ThreadLocal<long[]> QUEUE_NANOS = ThreadLocal.withInitial(() -> new long[] { -1 });
+
+    private final Map<String, Stages> methods = new ConcurrentHashMap<>();
+
+    public Stages forMethod(String workflowMethod) {
+        return methods.computeIfAbsent(workflowMethod, method -> new Stages());
+    }
+
+    /**
+     * Wraps a task handed to a workflow executor so the stage it runs can pick up
+     * how long it was queued.
+     */
+    static Runnable trackQueueTime(Runnable task) {
+        long enqueuedAt = System.nanoTime();
+        return () -> {
+            long[] queueNanos = QUEUE_NANOS.get();
+            queueNanos[0] = System.nanoTime() - enqueuedAt;
+            try {
+                task.run();
+            } finally {
+                queueNanos[0] = -1;
+            }
+        };
+    }
+
+    private static long claimQueueNanos() {
+        long[] queueNanos = QUEUE_NANOS.get();
+        long claimed = queueNanos[0];
+        queueNanos[0] = -1;
+        return claimed;
+    }
+
+    /**
+     * @return per workflow method and stage, the execution and queue time
+     *         percentiles
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        methods.forEach((workflowMethod, stages) -> snapshot.put(workflowMethod, stages.snapshot()));
+        return snapshot;
+    }
+
+    /** The stage timings of one workflow method. */
+    public static final class Stages {
+        private final Map<String, StageHistograms> stages = new ConcurrentHashMap<>();
+
+        /**
+         * Times a pipeline stage each time it runs.
+         */
+        public <T, R> Function<T, R> time(String stage, Function<T, R> function) {
+            StageHistograms histograms = stages.computeIfAbsent(stage, name -> new StageHistograms());
+            return input -> {
+                long queueNanos = claimQueueNanos();
+                if (queueNanos >= 0) {
+                    histograms.queue.recordNanos(queueNanos);
+                }
+                long start = System.nanoTime();
+                try {
+                    return function.apply(input);
+                } finally {
+                    histograms.execution.recordNanos(System.nanoTime() - start);
+                }
+            };
+        }
+
+        /**
+         * Times a pipeline stage that takes per-request state besides its input, so
+         * a pipeline built once can be timed without wrapping it on every request.
+         */
+        public <T, U, R> BiFunction<T, U, R> time(String stage, BiFunction<T, U, R> function) {
+            StageHistograms histograms = stages.computeIfAbsent(stage, name -> new StageHistograms());
+            return (first, second) -> {
+                long queueNanos = claimQueueNanos();
+                if (queueNanos >= 0) {
+                    histograms.queue.recordNanos(queueNanos);
+                }
+                long start = System.nanoTime();
+                try {
+                    return function.apply(first, second);
+                } finally {
+                    histograms.execution.recordNanos(System.nanoTime() - start);
+                }
+            };
+        }
+
+        /**
+         * Times a stage that runs elsewhere, e.g. on the hub's own executor, from
+         * now until the future completes. Its queue time can't be told apart.
+         */
+        public <T> CompletableFuture<T> time(String stage, CompletableFuture<T> future) {
+            StageHistograms histograms = stages.computeIfAbsent(stage, name -> new StageHistograms());
+            long start = System.nanoTime();
+            return future.whenComplete((result, exception) -> histograms.execution
+                    .recordNanos(System.nanoTime() - start));
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new TreeMap<>();
+            stages.forEach((stage, histograms) -> {
+                Map<String, Object> stageSnapshot = new TreeMap<>();
+                stageSnapshot.put("execution", histograms.execution.snapshot());
+                if (histograms.queue.getCount() > 0) {
+                    stageSnapshot.put("queue", histograms.queue.snapshot());
+                }
+                snapshot.put(stage, stageSnapshot);
+            });
+            return snapshot;
+        }
+    }
+
+    private static final class StageHistograms {
+        private final LatencyHistogram execution = new LatencyHistogram();
+        private final LatencyHistogram queue = new LatencyHistogram();
+    }
+}
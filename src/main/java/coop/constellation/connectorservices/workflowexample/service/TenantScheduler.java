@@ -0,0 +1,261 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.LatencyHistogram;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowRejectedException;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shares the pipelines this deployment runs fairly between the credit unions
+ * it serves, keyed by the org connector param, so one org's burst queues behind
+ * its own work instead of everyone's.
+ *
+ * Up to workflow.tenant.max-in-flight pipelines run at a time. When more are
+ * submitted, each org queues its own, and the free slots go to the orgs in
+ * deficit round robin: every round an org may start as many pipelines as its
+ * weight, so an org of weight 2 gets twice the share of a busy deployment of an
+ * org of weight 1. An org never runs more than its own max-in-flight (0 or less
+ * is no cap), and requests past its queue capacity are rejected.
+ *
+ * <pre>
+ * workflow.tenant.default.weight=1
+ * workflow.tenant.default.max-in-flight=0
+ * workflow.tenant.default.queue-capacity=500
+ * workflow.tenant.cu123.weight=3
+ * </pre>
+ */
+@Service
+public class TenantScheduler implements StatsSupplier {
+
+    private static final String PROPERTY_PREFIX = "workflow.tenant.";
+
+    private final Environment env;
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    /** Orgs with queued pipelines, in round robin order. */
+    private final Deque<Tenant> active = new ArrayDeque<>();
+    private int inFlight;
+    /** Dispatch requests not yet served; only the thread that raises it from 0 dispatches. */
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+
+    public TenantScheduler(Environment env) {
+        this.env = env;
+        this.enabled = env.getProperty(PROPERTY_PREFIX + "enabled", Boolean.class, true);
+        this.maxInFlight = Math.max(1, env.getProperty(PROPERTY_PREFIX + "max-in-flight", Integer.class, 256));
+    }
+
+    /**
+     * Starts the pipeline now, or once it is the org's turn.
+     *
+     * @return completes with the pipeline's future
+     * @throws WorkflowRejectedException when the org's queue is full
+     */
+    public <T> CompletableFuture<T> submit(String org, Supplier<CompletableFuture<T>> pipeline) {
+        if (!enabled) {
+            return pipeline.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Pending pending = new Pending(() -> pipeline.get().whenComplete((value, exception) -> {
+            if (exception != null) {
+                result.completeExceptionally(exception);
+            } else {
+                result.complete(value);
+            }
+        }), result);
+        synchronized (this) {
+            Tenant tenant = tenants.computeIfAbsent(org, Tenant::new);
+            if (tenant.queue.size() >= tenant.queueCapacity) {
+                tenant.rejected++;
+                throw new WorkflowRejectedException("Too many requests queued for org " + org);
+            }
+            tenant.queue.addLast(pending);
+            if (!tenant.isActive) {
+                tenant.isActive = true;
+                active.addLast(tenant);
+            }
+        }
+        dispatch();
+        return result;
+    }
+
+    /*
+     * Starts whatever the free slots allow, outside the lock. A pipeline that
+     * completes as it starts dispatches again, which is left to the loop here
+     * rather than recursing.
+     */
+    private void dispatch() {
+        if (dispatchRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            for (Started started : next()) {
+                started.run();
+            }
+            requests = dispatchRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /* Deficit round robin over the orgs with queued pipelines */
+    private synchronized List<Started> next() {
+        List<Started> starts = new ArrayList<>();
+        // orgs passed over this call because they are at their own limit
+        int capped = 0;
+        while (inFlight < maxInFlight && !active.isEmpty() && capped < active.size()) {
+            Tenant tenant = active.peekFirst();
+            if (tenant.isCapped()) {
+                active.addLast(active.pollFirst());
+                capped++;
+                continue;
+            }
+            capped = 0;
+            if (tenant.deficit < 1) {
+                tenant.deficit += tenant.weight;
+            }
+            while (tenant.deficit >= 1 && !tenant.queue.isEmpty() && !tenant.isCapped() && inFlight < maxInFlight) {
+                Pending pending = tenant.queue.pollFirst();
+                tenant.deficit--;
+                tenant.inFlight++;
+                inFlight++;
+                starts.add(new Started(tenant, pending));
+            }
+            active.pollFirst();
+            if (tenant.queue.isEmpty()) {
+                // an idle org doesn't save up turns
+                tenant.deficit = 0;
+                tenant.isActive = false;
+            } else if (tenant.deficit >= 1 && inFlight >= maxInFlight) {
+                // the deployment filled up mid turn, the org resumes it next time
+                active.addFirst(tenant);
+            } else {
+                active.addLast(tenant);
+            }
+        }
+        return starts;
+    }
+
+    private synchronized void finished(Tenant tenant, long startedNanos) {
+        tenant.inFlight--;
+        inFlight--;
+        tenant.latency.recordNanos(System.nanoTime() - startedNanos);
+    }
+
+    @Override
+    public String getName() {
+        return "tenants";
+    }
+
+    @Override
+    public synchronized Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("inFlight", inFlight);
+        Map<String, Object> orgs = new TreeMap<>();
+        tenants.forEach((org, tenant) -> {
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("weight", tenant.weight);
+            counts.put("maxInFlight", tenant.maxInFlight);
+            counts.put("inFlight", tenant.inFlight);
+            counts.put("queueDepth", tenant.queue.size());
+            counts.put("started", tenant.started);
+            counts.put("rejected", tenant.rejected);
+            counts.put("queueTime", tenant.queueTime.snapshot());
+            counts.put("latency", tenant.latency.snapshot());
+            orgs.put(org, counts);
+        });
+        stats.put("orgs", orgs);
+        return stats;
+    }
+
+    private final class Tenant {
+        final int weight;
+        final int maxInFlight;
+        final int queueCapacity;
+        final Deque<Pending> queue = new ArrayDeque<>();
+        final LatencyHistogram queueTime = new LatencyHistogram();
+        final LatencyHistogram latency = new LatencyHistogram();
+        int deficit;
+        int inFlight;
+        boolean isActive;
+        long started;
+        long rejected;
+
+        Tenant(String org) {
+            this.weight = Math.max(1, property(org, "weight", 1));
+            this.maxInFlight = property(org, "max-in-flight", 0);
+            this.queueCapacity = Math.max(0, property(org, "queue-capacity", 500));
+        }
+
+        boolean isCapped() {
+            return maxInFlight > 0 && inFlight >= maxInFlight;
+        }
+
+        private int property(String org, String key, int defaultValue) {
+            Integer fallback = env.getProperty(PROPERTY_PREFIX + "default." + key, Integer.class, defaultValue);
+            return env.getProperty(PROPERTY_PREFIX + org + "." + key, Integer.class, fallback);
+        }
+    }
+
+    private static final class Pending {
+        final Supplier<CompletableFuture<?>> pipeline;
+        final CompletableFuture<?> result;
+        final long queuedAt = System.nanoTime();
+
+        Pending(Supplier<CompletableFuture<?>> pipeline, CompletableFuture<?> result) {
+            this.pipeline = pipeline;
+            this.result = result;
+        }
+    }
+
+    private final class Started {
+        final Tenant tenant;
+        final Pending pending;
+
+        Started(Tenant tenant, Pending pending) {
+            this.tenant = tenant;
+            this.pending = pending;
+        }
+
+        void run() {
+            long startedNanos = System.nanoTime();
+            if (pending.result.isDone()) {
+                // cancelled while queued, e.g. by the shutdown drain
+                finished(tenant, startedNanos);
+                dispatch();
+                return;
+            }
+            synchronized (TenantScheduler.this) {
+                tenant.queueTime.recordNanos(startedNanos - pending.queuedAt);
+                tenant.started++;
+            }
+            CompletableFuture<?> pipeline;
+            try {
+                pipeline = pending.pipeline.get();
+            } catch (RuntimeException e) {
+                pending.result.completeExceptionally(e);
+                finished(tenant, startedNanos);
+                dispatch();
+                return;
+            }
+            pipeline.whenComplete((value, exception) -> {
+                finished(tenant, startedNanos);
+                dispatch();
+            });
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.connectorservices.common.workflow.ConnectorHubService;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets the pipelines in flight finish before the service stops. Workflow
+ * endpoints answer before their pipeline completes the connector message, so
+ * without this a rolling deploy drops those messages and the hub never hears
+ * back about them.
+ *
+ * On shutdown the service stops accepting workflow requests and reports itself
+ * not ready, then waits up to workflow.drain.timeout-ms for the tracked
+ * pipelines to complete. Any left after that are completed with the usual
+ * workflow error and cancelled, so a pipeline still queued for its org never
+ * starts. Pipelines ask mayComplete before completing their message, so one
+ * still running when the drain fails it leaves the message alone, and the hub
+ * hears back exactly once.
+ */
+@Slf4j
+@Service
+public class WorkflowDrain implements SmartLifecycle, StatsSupplier {
+
+    private final ConnectorHubService connectorHubService;
+    private final long timeoutMillis;
+    /** Tracked pipelines by connector message; messages are compared by identity. */
+    private final Map<ConnectorMessage, InFlight> inFlight = Collections.synchronizedMap(new IdentityHashMap<>());
+    /** Messages the drain completed with an error, kept until the service stops. */
+    private final Set<ConnectorMessage> abandonedMessages = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final LongAdder drained = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private volatile boolean running;
+    private volatile boolean draining;
+    private volatile long drainStartedAt;
+    private volatile long drainEndedAt;
+
+    public WorkflowDrain(ConnectorHubService connectorHubService, Environment env) {
+        this.connectorHubService = connectorHubService;
+        this.timeoutMillis = Math.max(0, env.getProperty("workflow.drain.timeout-ms", Long.class, 25000L));
+    }
+
+    /**
+     * @return false once shutdown has begun; new workflow requests are then
+     *         turned away
+     */
+    public boolean isAccepting() {
+        return !draining;
+    }
+
+    /**
+     * @return true while the service is started and not draining
+     */
+    public boolean isReady() {
+        return running && !draining;
+    }
+
+    /**
+     * Tracks the pipeline until its future completes.
+     *
+     * @return the given future
+     */
+    public <T> CompletableFuture<T> track(String workflowMethod, ConnectorMessage connectorMessage,
+            CompletableFuture<T> pipeline) {
+        InFlight entry = new InFlight(workflowMethod, connectorMessage, pipeline);
+        inFlight.put(connectorMessage, entry);
+        pipeline.whenComplete((result, exception) -> {
+            if (inFlight.remove(connectorMessage, entry) && draining) {
+                drained.increment();
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        });
+        return pipeline;
+    }
+
+    /**
+     * Claims the completion of the message for its pipeline, which must call
+     * this before completing the message, with a response or an error.
+     *
+     * @return false when the drain has already completed the message with an
+     *         error; the pipeline must then leave it alone
+     */
+    public boolean mayComplete(ConnectorMessage connectorMessage) {
+        InFlight entry = inFlight.get(connectorMessage);
+        if (entry != null) {
+            return entry.completedBy.compareAndSet(null, CompletedBy.PIPELINE)
+                    || entry.completedBy.get() == CompletedBy.PIPELINE;
+        }
+        return !abandonedMessages.contains(connectorMessage);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        stopAccepting();
+        drain();
+    }
+
+    /* Drains on its own thread, so other beans in this phase stop alongside */
+    @Override
+    public void stop(Runnable callback) {
+        stopAccepting();
+        Thread thread = new Thread(() -> {
+            try {
+                drain();
+            } finally {
+                callback.run();
+            }
+        }, "workflow-drain");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void stopAccepting() {
+        drainStartedAt = System.currentTimeMillis();
+        draining = true;
+    }
+
+    private void drain() {
+        log.info("Draining {} workflow pipelines for up to {} ms", inFlight.size(), timeoutMillis);
+        long deadline = drainStartedAt + timeoutMillis;
+        synchronized (this) {
+            long remaining;
+            while (!inFlight.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        abandonLeftovers();
+        drainEndedAt = System.currentTimeMillis();
+        running = false;
+        log.info("Drained workflow pipelines in {} ms, {} completed, {} failed at the drain timeout",
+                drainEndedAt - drainStartedAt, drained.sum(), abandoned.sum());
+    }
+
+    private void abandonLeftovers() {
+        List<InFlight> leftovers;
+        synchronized (inFlight) {
+            leftovers = new ArrayList<>(inFlight.values());
+        }
+        for (InFlight leftover : leftovers) {
+            if (!leftover.completedBy.compareAndSet(null, CompletedBy.DRAIN)) {
+                // the pipeline is completing the message itself
+                continue;
+            }
+            abandonedMessages.add(leftover.connectorMessage);
+            inFlight.remove(leftover.connectorMessage, leftover);
+            abandoned.increment();
+            leftover.pipeline.cancel(false);
+            String message = leftover.workflowMethod + " did not finish before shutdown";
+            try {
+                connectorHubService.handleAsyncFlowError(new WorkflowRejectedException(message),
+                        leftover.connectorMessage, "Error running " + leftover.workflowMethod + ": " + message);
+            } catch (RuntimeException e) {
+                // handleAsyncFlowError rethrows once it has reported the error, as it does for pipelines
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public String getName() {
+        return "drain";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", isReady());
+        stats.put("draining", draining);
+        stats.put("inFlight", inFlight.size());
+        stats.put("timeoutMs", timeoutMillis);
+        if (draining) {
+            long end = drainEndedAt != 0 ? drainEndedAt : System.currentTimeMillis();
+            stats.put("elapsedMs", end - drainStartedAt);
+        }
+        stats.put("drained", drained.sum());
+        stats.put("abandoned", abandoned.sum());
+        return stats;
+    }
+
+    private enum CompletedBy {
+        PIPELINE, DRAIN
+    }
+
+    private static class InFlight {
+        private final String workflowMethod;
+        private final ConnectorMessage connectorMessage;
+        private final CompletableFuture<?> pipeline;
+        /** Unset until the pipeline or the drain claims the message's completion. */
+        private final AtomicReference<CompletedBy> completedBy = new AtomicReference<>();
+
+        InFlight(String workflowMethod, ConnectorMessage connectorMessage, CompletableFuture<?> pipeline) {
+            this.workflowMethod = workflowMethod;
+            this.connectorMessage = connectorMessage;
+            this.pipeline = pipeline;
+        }
+    }
+}
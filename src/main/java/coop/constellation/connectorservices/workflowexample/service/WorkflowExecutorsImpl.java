@@ -0,0 +1,295 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowExecutors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Creates one bulkhead per workflow method on first use. Bulkheads are sized
+ * from properties, falling back to the defaults:
+ *
+ * <pre>
+ * workflow.executor.mode=platform
+ * workflow.executor.default.pool-size=16
+ * workflow.executor.default.queue-capacity=200
+ * workflow.executor.default.max-concurrency=10000
+ * workflow.executor.retrieveTransactionList.pool-size=32
+ * </pre>
+ *
+ * In platform mode each bulkhead is a bounded thread pool. In virtual mode
+ * every stage runs on its own virtual thread and the bulkhead only caps the
+ * number of stages in flight, so blocking hub waits no longer tie up pool
+ * threads. Virtual mode needs a Java 21 runtime; on older runtimes it falls
+ * back to platform pools. In priority mode every workflow method shares one
+ * pool that runs the stages of money movements ahead of reads, see
+ * PriorityScheduler.
+ *
+ * Tasks carry their enqueue time so StageTimings can report how long each
+ * pipeline stage waited for a thread.
+ *
+ * When a bulkhead is full the task is rejected, which fails the pipeline stage
+ * and sends the request through handleAsyncFlowError instead of queueing
+ * without bound.
+ */
+@Slf4j
+public class WorkflowExecutorsImpl implements WorkflowExecutors, StatsSupplier, DisposableBean {
+
+    static final String PROPERTY_PREFIX = "workflow.executor.";
+
+    private final Environment env;
+    private final ExecutorService virtualThreads;
+    private final PriorityScheduler priorityScheduler;
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public WorkflowExecutorsImpl(Environment env) {
+        this.env = env;
+        String mode = env.getProperty(PROPERTY_PREFIX + "mode", "platform");
+        this.virtualThreads = "virtual".equalsIgnoreCase(mode) ? newVirtualThreadPerTaskExecutor() : null;
+        this.priorityScheduler = "priority".equalsIgnoreCase(mode) ? new PriorityScheduler(env) : null;
+    }
+
+    @Override
+    public Executor get(String workflowMethod) {
+        return bulkheads.computeIfAbsent(workflowMethod, this::createBulkhead);
+    }
+
+    public String getMode() {
+        if (priorityScheduler != null) {
+            return "priority";
+        }
+        return virtualThreads != null ? "virtual" : "platform";
+    }
+
+    private Bulkhead createBulkhead(String workflowMethod) {
+        if (priorityScheduler != null) {
+            return new PriorityBulkhead(workflowMethod, priorityScheduler,
+                    priorityScheduler.classOf(workflowMethod));
+        }
+        if (virtualThreads != null) {
+            return new VirtualBulkhead(workflowMethod, virtualThreads,
+                    intProperty(workflowMethod, "max-concurrency", 10000));
+        }
+        return new PlatformBulkhead(workflowMethod, intProperty(workflowMethod, "pool-size", 16),
+                intProperty(workflowMethod, "queue-capacity", 200));
+    }
+
+    int intProperty(String workflowMethod, String key, int defaultValue) {
+        Integer fallback = env.getProperty(PROPERTY_PREFIX + "default." + key, Integer.class, defaultValue);
+        return env.getProperty(PROPERTY_PREFIX + workflowMethod + "." + key, Integer.class, fallback);
+    }
+
+    /**
+     * Looked up reflectively so the connector still compiles for and runs on the
+     * Java 17 base image.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need a Java 21 runtime, falling back to platform workflow executors");
+            return null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "executors";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("mode", getMode());
+        if (priorityScheduler != null) {
+            stats.put("priority", priorityScheduler.stats());
+        }
+        bulkheads.forEach((workflowMethod, bulkhead) -> stats.put(workflowMethod, bulkhead.stats()));
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        bulkheads.values().forEach(Bulkhead::shutdown);
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+        }
+        if (priorityScheduler != null) {
+            priorityScheduler.shutdown();
+        }
+    }
+
+    private abstract static class Bulkhead implements Executor {
+        final String workflowMethod;
+        final LongAdder rejected = new LongAdder();
+
+        Bulkhead(String workflowMethod) {
+            this.workflowMethod = workflowMethod;
+        }
+
+        RejectedExecutionException reject() {
+            rejected.increment();
+            return new RejectedExecutionException("Workflow executor for " + workflowMethod + " is saturated");
+        }
+
+        abstract Map<String, Object> stats();
+
+        void shutdown() {
+        }
+    }
+
+    private static class PlatformBulkhead extends Bulkhead {
+        private final ThreadPoolExecutor pool;
+
+        PlatformBulkhead(String workflowMethod, int poolSize, int queueCapacity) {
+            super(workflowMethod);
+            // blocking hub waits dominate, so run at full size and let idle threads time out
+            this.pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), threadFactory(workflowMethod), (task, p) -> {
+                        throw reject();
+                    });
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            pool.execute(StageTimings.trackQueueTime(command));
+        }
+
+        @Override
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("activeThreads", pool.getActiveCount());
+            stats.put("poolSize", pool.getPoolSize());
+            stats.put("maxPoolSize", pool.getMaximumPoolSize());
+            stats.put("queueDepth", pool.getQueue().size());
+            stats.put("queueRemaining", pool.getQueue().remainingCapacity());
+            stats.put("completed", pool.getCompletedTaskCount());
+            stats.put("rejected", rejected.sum());
+            return stats;
+        }
+
+        @Override
+        void shutdown() {
+            pool.shutdown();
+        }
+
+        private static ThreadFactory threadFactory(String workflowMethod) {
+            AtomicInteger count = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "wf-" + workflowMethod + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    private static class PriorityBulkhead extends Bulkhead {
+        private final PriorityScheduler scheduler;
+        private final String priorityClass;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+
+        PriorityBulkhead(String workflowMethod, PriorityScheduler scheduler, String priorityClass) {
+            super(workflowMethod);
+            this.scheduler = scheduler;
+            this.priorityClass = priorityClass;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            queued.incrementAndGet();
+            try {
+                scheduler.execute(priorityClass, StageTimings.trackQueueTime(() -> {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        command.run();
+                    } finally {
+                        active.decrementAndGet();
+                        completed.increment();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                queued.decrementAndGet();
+                throw reject();
+            }
+        }
+
+        /* The same counts as a platform bulkhead, for this method's share of the shared pool */
+        @Override
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("priorityClass", priorityClass);
+            stats.put("activeThreads", active.get());
+            stats.put("queueDepth", queued.get());
+            stats.put("completed", completed.sum());
+            stats.put("rejected", rejected.sum());
+            return stats;
+        }
+    }
+
+    private static class VirtualBulkhead extends Bulkhead {
+        private final ExecutorService virtualThreads;
+        private final Semaphore permits;
+        private final int maxConcurrency;
+        private final LongAdder completed = new LongAdder();
+
+        VirtualBulkhead(String workflowMethod, ExecutorService virtualThreads, int maxConcurrency) {
+            super(workflowMethod);
+            this.virtualThreads = virtualThreads;
+            this.maxConcurrency = maxConcurrency;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!permits.tryAcquire()) {
+                throw reject();
+            }
+            Runnable task = StageTimings.trackQueueTime(command);
+            try {
+                virtualThreads.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                        completed.increment();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("activeThreads", maxConcurrency - permits.availablePermits());
+            stats.put("maxConcurrency", maxConcurrency);
+            stats.put("queueDepth", 0);
+            stats.put("completed", completed.sum());
+            stats.put("rejected", rejected.sum());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.handlers.WorkflowHandlerLogic;
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowDefinition;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The workflow methods served by the generic workflow endpoint: every
+ * WorkflowDefinition bean plus the ones listed in workflow.definitions, e.g.
+ *
+ * <pre>
+ * workflow.definitions=retrieveLoanList
+ * workflow.definition.retrieveLoanList.kiva-method=getLoans
+ * workflow.definition.retrieveLoanList.handler=retrieveAccountListHandler
+ * workflow.definition.retrieveLoanList.params=accountId,filters
+ * </pre>
+ *
+ * A definition from properties replaces a bean with the same name.
+ */
+@Slf4j
+@Service
+public class WorkflowRegistry {
+
+    private static final String PREFIX = "workflow.definition.";
+
+    private final Map<String, WorkflowDefinition> definitions = new LinkedHashMap<>();
+
+    public WorkflowRegistry(List<WorkflowDefinition> beans, Environment env, ApplicationContext context) {
+        beans.forEach(definition -> definitions.put(definition.getName(), definition));
+        for (String name : env.getProperty("workflow.definitions", String[].class, new String[0])) {
+            definitions.put(name.trim(), fromProperties(name.trim(), env, context));
+        }
+        log.info("Registered workflow methods {}", definitions.keySet());
+    }
+
+    private static WorkflowDefinition fromProperties(String name, Environment env, ApplicationContext context) {
+        String kivaMethod = env.getProperty(PREFIX + name + ".kiva-method");
+        String handler = env.getProperty(PREFIX + name + ".handler");
+        if (kivaMethod == null || handler == null) {
+            throw new IllegalStateException("Workflow method " + name + " needs " + PREFIX + name
+                    + ".kiva-method and " + PREFIX + name + ".handler");
+        }
+        return WorkflowDefinition.builder()
+                .name(name)
+                .kivaMethod(kivaMethod)
+                .handler(context.getBean(handler, WorkflowHandlerLogic.class))
+                .paramNames(Arrays.stream(env.getProperty(PREFIX + name + ".params", String[].class, new String[0]))
+                        .map(String::trim)
+                        .filter(param -> !param.isEmpty())
+                        .collect(Collectors.toUnmodifiableList()))
+                .sendEmptyParams(env.getProperty(PREFIX + name + ".send-empty-params", Boolean.class, false))
+                .invalidatesAccounts(env.getProperty(PREFIX + name + ".invalidates-accounts", Boolean.class, false))
+                .idempotent(env.getProperty(PREFIX + name + ".idempotent", Boolean.class, false))
+                .build();
+    }
+
+    /**
+     * @return the definition, or null when no workflow method has the name
+     */
+    public WorkflowDefinition get(String name) {
+        return definitions.get(name);
+    }
+
+    public Collection<WorkflowDefinition> getDefinitions() {
+        return Collections.unmodifiableCollection(definitions.values());
+    }
+}
@@ -0,0 +1,179 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.Deadline;
+import coop.constellation.connectorservices.workflowexample.helpers.StatsSupplier;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Sets the deadline of each workflow request and kiva call and enforces it.
+ * A request gets workflow.timeout.<workflowMethod>.request-ms from ingress, and
+ * each kiva call workflow.timeout.<kivaMethod>.kiva-ms, cut short by whatever
+ * is left of the request's deadline. When a deadline passes, the future fails
+ * with a DeadlineExceededException so the pipeline's error completion runs, and
+ * a connector hub wait still running for it is interrupted.
+ */
+@Service
+public class WorkflowTimeouts implements StatsSupplier, DisposableBean {
+
+    private static final long DEFAULT_REQUEST_MILLIS = 30000;
+    private static final long DEFAULT_KIVA_MILLIS = 20000;
+
+    private final Environment env;
+    private final ScheduledExecutorService timer;
+    private final Map<String, Long> requestBudgets = new ConcurrentHashMap<>();
+    private final Map<String, Long> kivaBudgets = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> expired = new ConcurrentHashMap<>();
+    private final LongAdder interrupted = new LongAdder();
+
+    public WorkflowTimeouts(Environment env) {
+        this.env = env;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "workflow-deadline-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the deadline of a request to the workflow method arriving now
+     */
+    public Deadline start(String workflowMethod) {
+        long budget = requestBudgets.computeIfAbsent(workflowMethod,
+                method -> budget(method, "request-ms", DEFAULT_REQUEST_MILLIS));
+        return Deadline.after(workflowMethod, budget);
+    }
+
+    /**
+     * @return the deadline of a kiva call made now for a request with the given
+     *         deadline
+     */
+    public Deadline forKivaCall(Deadline requestDeadline, String kivaMethod) {
+        long budget = kivaBudgets.computeIfAbsent(kivaMethod,
+                method -> budget(method, "kiva-ms", DEFAULT_KIVA_MILLIS));
+        return requestDeadline.within(kivaMethod, budget);
+    }
+
+    private long budget(String method, String suffix, long defaultMillis) {
+        Long fallback = env.getProperty("workflow.timeout.default." + suffix, Long.class, defaultMillis);
+        return env.getProperty("workflow.timeout." + method + "." + suffix, Long.class, fallback);
+    }
+
+    /**
+     * @return a future that completes like the given one, or fails with a
+     *         DeadlineExceededException once the deadline passes. The given
+     *         future is then cancelled, so stages still queued behind it do not
+     *         run. The failure is completed on the given executor, so the stages
+     *         that handle it never run on the timer thread.
+     */
+    public <T> CompletableFuture<T> within(CompletableFuture<T> future, Deadline deadline, String stage,
+            Executor executor) {
+        if (!deadline.isBounded() || future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> guarded = new CompletableFuture<>();
+        Runnable expire = () -> {
+            if (guarded.completeExceptionally(deadline.exceeded(stage))) {
+                expired.computeIfAbsent(deadline.getName(), name -> new LongAdder()).increment();
+                future.cancel(false);
+            }
+        };
+        ScheduledFuture<?> alarm = timer.schedule(() -> {
+            try {
+                executor.execute(expire);
+            } catch (RejectedExecutionException e) {
+                // the executor is full, which is no reason to hold up the timer
+                ForkJoinPool.commonPool().execute(expire);
+            }
+        }, Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        future.whenComplete((result, exception) -> {
+            alarm.cancel(false);
+            if (exception != null) {
+                guarded.completeExceptionally(exception);
+            } else {
+                guarded.complete(result);
+            }
+        });
+        return guarded;
+    }
+
+    /**
+     * Wraps a blocking stage so it fails right away once the deadline has passed,
+     * and the thread running it is interrupted when the deadline passes while it
+     * runs, handing the thread back to its pool.
+     */
+    public <T, R> Function<T, R> interruptible(Deadline deadline, String stage, Function<T, R> function) {
+        if (!deadline.isBounded()) {
+            return function;
+        }
+        return input -> {
+            deadline.check(stage);
+            Thread thread = Thread.currentThread();
+            // running, then whether the alarm interrupted the thread
+            boolean[] state = { true, false };
+            ScheduledFuture<?> alarm = timer.schedule(() -> {
+                synchronized (state) {
+                    if (state[0]) {
+                        state[1] = true;
+                        interrupted.increment();
+                        thread.interrupt();
+                    }
+                }
+            }, Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+            try {
+                return function.apply(input);
+            } catch (RuntimeException e) {
+                if (deadline.isExpired()) {
+                    throw deadline.exceeded(stage);
+                }
+                throw e;
+            } finally {
+                boolean fired;
+                synchronized (state) {
+                    state[0] = false;
+                    fired = state[1];
+                }
+                alarm.cancel(false);
+                if (fired) {
+                    // don't leave our interrupt behind for the next task on this pool thread
+                    Thread.interrupted();
+                }
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return "timeouts";
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        Map<String, Object> expiredCounts = new TreeMap<>();
+        expired.forEach((name, count) -> expiredCounts.put(name, count.sum()));
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("expired", expiredCounts);
+        stats.put("interruptedWaits", interrupted.sum());
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+    }
+}
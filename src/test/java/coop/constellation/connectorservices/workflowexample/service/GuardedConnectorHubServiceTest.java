@@ -0,0 +1,167 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.connectorservices.common.workflow.ConnectorHubService;
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
+import com.xtensifi.connectorservices.common.workflow.ConnectorState;
+
+import coop.constellation.connectorservices.workflowexample.helpers.ConnectorHubRejectedException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class GuardedConnectorHubServiceTest {
+
+    private static final ConnectorRequestData GET_ACCOUNTS = new ConnectorRequestData("kivapublic", "1.0",
+            "getAccounts");
+
+    @Test
+    void circuitOpensAtTheFailureRateAndRejectsCalls() {
+        GuardedConnectorHubService hub = hub(settings().openMillis(60000));
+
+        for (int i = 0; i < 4; i++) {
+            hub.guarded(GET_ACCOUNTS, permit -> CompletableFuture.failedFuture(new IllegalStateException("down")));
+        }
+
+        assertEquals("OPEN", stats(hub).get("state"));
+        assertRejected(hub.guarded(GET_ACCOUNTS, permit -> new CompletableFuture<>()));
+        assertEquals(1L, stats(hub).get("rejectedOpen"));
+    }
+
+    @Test
+    void halfOpenCircuitClosesOnceTheTrialCallsSucceed() {
+        GuardedConnectorHubService hub = hub(settings().openMillis(0).halfOpenCalls(1));
+        for (int i = 0; i < 4; i++) {
+            hub.guarded(GET_ACCOUNTS, permit -> CompletableFuture.failedFuture(new IllegalStateException("down")));
+        }
+
+        CompletableFuture<ConnectorState> trial = new CompletableFuture<>();
+        hub.guarded(GET_ACCOUNTS, permit -> trial);
+        assertEquals("HALF_OPEN", stats(hub).get("state"));
+        assertRejected(hub.guarded(GET_ACCOUNTS, permit -> new CompletableFuture<>()));
+
+        trial.complete(mock(ConnectorState.class));
+        assertEquals("CLOSED", stats(hub).get("state"));
+    }
+
+    @Test
+    void halfOpenCircuitOpensAgainOnAFailedTrial() {
+        GuardedConnectorHubService hub = hub(settings().openMillis(0).halfOpenCalls(1));
+        for (int i = 0; i < 4; i++) {
+            hub.guarded(GET_ACCOUNTS, permit -> CompletableFuture.failedFuture(new IllegalStateException("down")));
+        }
+
+        hub.guarded(GET_ACCOUNTS, permit -> CompletableFuture.failedFuture(new IllegalStateException("still down")));
+
+        assertEquals("OPEN", stats(hub).get("state"));
+    }
+
+    @Test
+    void limitRejectsCallsPastItAndBacksOffOnFailure() {
+        GuardedConnectorHubService hub = hub(settings().initialLimit(4).backoffRatio(0.5));
+        CompletableFuture<ConnectorState> first = new CompletableFuture<>();
+        hub.guarded(GET_ACCOUNTS, permit -> first);
+        for (int i = 0; i < 3; i++) {
+            hub.guarded(GET_ACCOUNTS, permit -> new CompletableFuture<>());
+        }
+
+        assertRejected(hub.guarded(GET_ACCOUNTS, permit -> new CompletableFuture<>()));
+        assertEquals(1L, stats(hub).get("rejectedLimit"));
+
+        first.completeExceptionally(new IllegalStateException("failed"));
+        assertEquals(2, stats(hub).get("limit"));
+    }
+
+    @Test
+    void limitGrowsWhileItIsUsedByFastSuccessfulCalls() {
+        GuardedConnectorHubService hub = hub(settings().initialLimit(2));
+        Deque<CompletableFuture<ConnectorState>> inFlight = new ArrayDeque<>();
+        for (int i = 0; i < 2; i++) {
+            inFlight.add(start(hub));
+        }
+
+        // 2, then 2.5, 2.9 and 3.24
+        for (int i = 0; i < 3; i++) {
+            inFlight.poll().complete(mock(ConnectorState.class));
+            inFlight.add(start(hub));
+        }
+
+        assertEquals(3, stats(hub).get("limit"));
+    }
+
+    @Test
+    void cancelledCallKeepsItsPermitUntilItsWaitEnds() {
+        GuardedConnectorHubService hub = hub(settings().initialLimit(1).minLimit(1));
+        CompletableFuture<ConnectorState> sent = new CompletableFuture<>();
+        CompletableFuture<ConnectorState> call = hub.guarded(GET_ACCOUNTS,
+                permit -> sent.thenApply(permit.whileWaiting(Function.identity())));
+
+        call.cancel(false);
+        assertRejected(hub.guarded(GET_ACCOUNTS, permit -> new CompletableFuture<>()));
+
+        sent.complete(mock(ConnectorState.class));
+        assertEquals(0, stats(hub).get("inFlight"));
+        assertEquals(1L, stats(hub).get("calls"));
+    }
+
+    @Test
+    void callCancelledBeforeSendingSendsNothingAndRecordsNoOutcome() {
+        GuardedConnectorHubService hub = hub(settings());
+        CompletableFuture<ConnectorState> initialized = new CompletableFuture<>();
+        boolean[] sent = { false };
+        CompletableFuture<ConnectorState> call = hub.guarded(GET_ACCOUNTS,
+                permit -> initialized.thenApply(permit.beforeSending((ConnectorState connectorState) -> {
+                    sent[0] = true;
+                    return connectorState;
+                })).thenApply(permit.whileWaiting(Function.identity())));
+
+        call.cancel(false);
+        initialized.complete(mock(ConnectorState.class));
+
+        assertFalse(sent[0]);
+        assertEquals(0, stats(hub).get("inFlight"));
+        assertEquals(0L, stats(hub).get("calls"));
+    }
+
+    private static GuardedConnectorHubService.Settings.SettingsBuilder settings() {
+        return GuardedConnectorHubService.Settings.builder()
+                .enabled(true)
+                .windowSize(4)
+                .minCalls(4)
+                .failureRatePercent(50)
+                .openMillis(60000)
+                .halfOpenCalls(1)
+                .initialLimit(10)
+                .minLimit(1)
+                .maxLimit(100)
+                .slowCallMillis(60000)
+                .backoffRatio(0.5);
+    }
+
+    private static GuardedConnectorHubService hub(GuardedConnectorHubService.Settings.SettingsBuilder settings) {
+        return new GuardedConnectorHubService(mock(ConnectorHubService.class), settings.build());
+    }
+
+    private static CompletableFuture<ConnectorState> start(GuardedConnectorHubService hub) {
+        CompletableFuture<ConnectorState> call = new CompletableFuture<>();
+        assertFalse(hub.guarded(GET_ACCOUNTS, permit -> call).isCompletedExceptionally());
+        return call;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stats(GuardedConnectorHubService hub) {
+        return (Map<String, Object>) hub.get().get("getAccounts");
+    }
+
+    private static void assertRejected(CompletableFuture<ConnectorState> call) {
+        ExecutionException rejected = assertThrows(ExecutionException.class, call::get);
+        assertInstanceOf(ConnectorHubRejectedException.class, rejected.getCause());
+    }
+}
@@ -0,0 +1,117 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import coop.constellation.connectorservices.workflowexample.helpers.IdempotencyKey;
+import coop.constellation.connectorservices.workflowexample.helpers.OutcomeUnknownException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+
+    private static final IdempotencyKey CLIENT_KEY = new IdempotencyKey("client", true);
+    private static final IdempotencyKey DERIVED_KEY = new IdempotencyKey("derived", false);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void duplicateOfARunInFlightWaitsForItsResponses() throws Exception {
+        IdempotencyStore store = store(null);
+        assertNull(store.claim(DERIVED_KEY));
+
+        CompletableFuture<List<String>> duplicate = store.claim(DERIVED_KEY);
+        assertFalse(duplicate.isDone());
+
+        store.complete(DERIVED_KEY, List.of("moved"));
+        assertEquals(List.of("moved"), duplicate.get());
+    }
+
+    @Test
+    void completedRunIsReplayedOnlyForAClientSuppliedKey() throws Exception {
+        IdempotencyStore store = store(null);
+        store.claim(CLIENT_KEY);
+        store.complete(CLIENT_KEY, List.of("moved"));
+        store.claim(DERIVED_KEY);
+        store.complete(DERIVED_KEY, List.of("moved"));
+
+        assertEquals(List.of("moved"), store.claim(CLIENT_KEY).get());
+        assertNull(store.claim(DERIVED_KEY));
+    }
+
+    @Test
+    void failedRunIsForgottenAndFailsItsDuplicates() {
+        IdempotencyStore store = store(null);
+        store.claim(CLIENT_KEY);
+        CompletableFuture<List<String>> duplicate = store.claim(CLIENT_KEY);
+
+        store.fail(CLIENT_KEY, new IllegalStateException("rejected"));
+
+        assertTrue(duplicate.isCompletedExceptionally());
+        assertNull(store.claim(CLIENT_KEY));
+    }
+
+    @Test
+    void runWithAnUnknownOutcomeHoldsItsKey() {
+        IdempotencyStore store = store(null);
+        store.claim(DERIVED_KEY);
+
+        store.unknown(DERIVED_KEY);
+
+        ExecutionException blocked = assertThrows(ExecutionException.class, () -> store.claim(DERIVED_KEY).get());
+        assertInstanceOf(OutcomeUnknownException.class, blocked.getCause());
+    }
+
+    @Test
+    void journalIsReadBackAfterARestart(@TempDir Path dir) throws Exception {
+        Path journal = dir.resolve("idempotency.jsonl");
+        IdempotencyStore store = store(journal);
+        store.claim(CLIENT_KEY);
+        store.complete(CLIENT_KEY, List.of("moved"));
+        store.claim(DERIVED_KEY);
+        store.unknown(DERIVED_KEY);
+        store.destroy();
+        // a line cut short by a crash
+        Files.writeString(journal, "{\"key\":\"cut", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        IdempotencyStore restarted = store(journal);
+
+        assertEquals(2, restarted.get().get("loaded"));
+        assertEquals(List.of("moved"), restarted.claim(CLIENT_KEY).get());
+        assertThrows(ExecutionException.class, () -> restarted.claim(DERIVED_KEY).get());
+        restarted.destroy();
+    }
+
+    @Test
+    void expiredRunsAreNotReadBack(@TempDir Path dir) throws Exception {
+        Path journal = dir.resolve("idempotency.jsonl");
+        IdempotencyStore store = new IdempotencyStore(mapper, true, -1, -1, 100, journal);
+        store.claim(CLIENT_KEY);
+        store.complete(CLIENT_KEY, List.of("moved"));
+        store.destroy();
+
+        IdempotencyStore restarted = store(journal);
+
+        assertEquals(0, restarted.get().get("loaded"));
+        assertNull(restarted.claim(CLIENT_KEY));
+        restarted.destroy();
+    }
+
+    private IdempotencyStore store(Path journal) {
+        try {
+            return new IdempotencyStore(mapper, true, 60000, 60000, 100, journal);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.connectorservices.common.workflow.ConnectorRequestData;
+import com.xtensifi.connectorservices.common.workflow.ConnectorResponse;
+import com.xtensifi.connectorservices.common.workflow.ConnectorState;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import coop.constellation.connectorservices.workflowexample.helpers.Deadline;
+import coop.constellation.connectorservices.workflowexample.helpers.DeadlineExceededException;
+import coop.constellation.connectorservices.workflowexample.helpers.KivaRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static coop.constellation.connectorservices.workflowexample.helpers.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class KivaCallServiceTest {
+
+    private final Executor executor = Runnable::run;
+    private final StageTimings.Stages stages = new StageTimings().forMethod("test");
+    private GuardedConnectorHubService hub;
+    private WorkflowTimeouts workflowTimeouts;
+    private KivaCallService kivaCallService;
+    private CompletableFuture<ConnectorState> hubCall;
+
+    @BeforeEach
+    void setUp() {
+        hub = mock(GuardedConnectorHubService.class);
+        hubCall = new CompletableFuture<>();
+        when(hub.guarded(any(), any())).thenReturn(hubCall);
+        when(hub.createConnectorState(any(), any())).thenAnswer(invocation -> mock(ConnectorState.class));
+        workflowTimeouts = new WorkflowTimeouts(new MockEnvironment());
+        kivaCallService = new KivaCallService(hub, new ResponseCache(0, 100, Set.of()), workflowTimeouts,
+                mock(KivaCallHedger.class), mock(IdempotencyStore.class));
+        ReflectionTestUtils.setField(kivaCallService, "coalescedMethods", Set.of("getAccounts"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        workflowTimeouts.destroy();
+    }
+
+    @Test
+    void identicalReadsInFlightShareOneHubCall() throws Exception {
+        CompletableFuture<ConnectorState> first = call("cu1", "user1", Deadline.none());
+        CompletableFuture<ConnectorState> second = call("cu1", "user1", Deadline.none());
+
+        hubCall.complete(response("accounts"));
+
+        assertNotNull(first.get(1, TimeUnit.SECONDS));
+        assertNotNull(second.get(1, TimeUnit.SECONDS));
+        verify(hub, times(1)).guarded(any(), any());
+        assertEquals(1L, kivaCallService.get().get("coalescedCalls"));
+        assertEquals(0, kivaCallService.get().get("inFlightShared"));
+    }
+
+    @Test
+    void readsOfAnotherOrgOrUserAreNotShared() {
+        call("cu1", "user1", Deadline.none());
+        call("cu2", "user1", Deadline.none());
+        call("cu1", "user2", Deadline.none());
+
+        verify(hub, times(3)).guarded(any(), any());
+    }
+
+    @Test
+    void readAfterTheSharedCallCompletedMakesItsOwnCall() {
+        call("cu1", "user1", Deadline.none());
+        hubCall.complete(response("accounts"));
+
+        call("cu1", "user1", Deadline.none());
+
+        verify(hub, times(2)).guarded(any(), any());
+    }
+
+    @Test
+    void firstCallersDeadlineDoesNotFailTheOthers() throws Exception {
+        CompletableFuture<ConnectorState> first = call("cu1", "user1", Deadline.after("first", 20));
+        CompletableFuture<ConnectorState> second = call("cu1", "user1", Deadline.none());
+
+        ExecutionException timedOut = assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(DeadlineExceededException.class, timedOut.getCause());
+        assertFalse(hubCall.isCancelled());
+
+        hubCall.complete(response("accounts"));
+        assertNotNull(second.get(1, TimeUnit.SECONDS));
+    }
+
+    private CompletableFuture<ConnectorState> call(String org, String userId, Deadline deadline) {
+        KivaRequest request = new KivaRequest(org, userId, KIVA_CONNECTOR, KIVA_VERSION, "getAccounts",
+                new TreeMap<>());
+        return kivaCallService.call(mock(ConnectorMessage.class), request, executor, stages, deadline);
+    }
+
+    private static ConnectorState response(String body) {
+        ConnectorState connectorState = mock(ConnectorState.class, RETURNS_DEEP_STUBS);
+        when(connectorState.getConnectorResponseList().getResponses()).thenReturn(List.of(
+                new ConnectorResponse(new ConnectorRequestData(KIVA_CONNECTOR, KIVA_VERSION, "getAccounts"), body)));
+        return connectorState;
+    }
+}
@@ -0,0 +1,98 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.KivaRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static coop.constellation.connectorservices.workflowexample.helpers.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    private final ResponseCache cache = new ResponseCache(60000, 100,
+            Set.of("getAccounts", "getTransactions", "getPartyById"));
+
+    @Test
+    void invalidateDropsTheAccountAndTheAccountListsOfThatUserOnly() {
+        KivaRequest transactions = request("cu1", "user1", "getTransactions", "acct1");
+        KivaRequest otherAccount = request("cu1", "user1", "getTransactions", "acct2");
+        KivaRequest accounts = request("cu1", "user1", "getAccounts", null);
+        KivaRequest party = request("cu1", "user1", "getPartyById", null);
+        KivaRequest otherUser = request("cu1", "user2", "getTransactions", "acct1");
+        KivaRequest otherOrg = request("cu2", "user1", "getTransactions", "acct1");
+        long generation = cache.generation();
+        for (KivaRequest request : List.of(transactions, otherAccount, accounts, party, otherUser, otherOrg)) {
+            cache.put(request, generation, List.of("response"));
+        }
+
+        cache.invalidate("cu1", "user1", List.of("acct1"));
+
+        assertNull(cache.get(transactions));
+        assertNull(cache.get(accounts));
+        assertNotNull(cache.get(otherAccount));
+        assertNotNull(cache.get(party));
+        assertNotNull(cache.get(otherUser));
+        assertNotNull(cache.get(otherOrg));
+    }
+
+    @Test
+    void readStartedBeforeAnInvalidationIsNotCached() {
+        KivaRequest accounts = request("cu1", "user1", "getAccounts", null);
+        long generation = cache.generation();
+
+        cache.invalidate("cu1", "user1", List.of("acct1"));
+        cache.put(accounts, generation, List.of("before the write"));
+
+        assertNull(cache.get(accounts));
+        assertEquals(1L, cache.get().get("staleDrops"));
+
+        cache.put(accounts, cache.generation(), List.of("after the write"));
+        assertEquals(List.of("after the write"), cache.get(accounts));
+    }
+
+    @Test
+    void invalidationOfAnotherUserDoesNotDropARead() {
+        KivaRequest accounts = request("cu1", "user1", "getAccounts", null);
+        long generation = cache.generation();
+
+        cache.invalidate("cu1", "user2", List.of("acct1"));
+        cache.invalidate("cu2", "user1", List.of("acct1"));
+        cache.put(accounts, generation, List.of("response"));
+
+        assertEquals(List.of("response"), cache.get(accounts));
+    }
+
+    @Test
+    void requestWithoutOrgOrUserIsNotCacheable() {
+        assertTrue(cache.isCacheable(request("cu1", "user1", "getAccounts", null)));
+        assertFalse(cache.isCacheable(request("", "user1", "getAccounts", null)));
+        assertFalse(cache.isCacheable(request("cu1", "", "getAccounts", null)));
+        assertFalse(cache.isCacheable(request("cu1", "user1", "startTransfer", null)));
+    }
+
+    @Test
+    void forgottenInvalidationsStillDropOlderReads() {
+        ResponseCache small = new ResponseCache(60000, 1, Set.of("getAccounts"));
+        KivaRequest accounts = request("cu1", "user1", "getAccounts", null);
+        long generation = small.generation();
+
+        small.invalidate("cu1", "user1", List.of());
+        // pushes user1's generation out
+        small.invalidate("cu1", "user2", List.of());
+        small.put(accounts, generation, List.of("before the write"));
+
+        assertNull(small.get(accounts));
+    }
+
+    private static KivaRequest request(String org, String userId, String method, String accountId) {
+        Map<String, String> params = new TreeMap<>();
+        if (accountId != null) {
+            params.put(ACCOUNT_ID, accountId);
+        }
+        return new KivaRequest(org, userId, KIVA_CONNECTOR, KIVA_VERSION, method, new TreeMap<>(params));
+    }
+}
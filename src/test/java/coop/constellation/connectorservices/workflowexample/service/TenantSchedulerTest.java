@@ -0,0 +1,84 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import coop.constellation.connectorservices.workflowexample.helpers.WorkflowRejectedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantSchedulerTest {
+
+    private final List<String> started = new ArrayList<>();
+
+    @Test
+    void freeSlotsGoToOrgsInProportionToTheirWeight() {
+        TenantScheduler scheduler = new TenantScheduler(new MockEnvironment()
+                .withProperty("workflow.tenant.max-in-flight", "1")
+                .withProperty("workflow.tenant.cu1.weight", "2"));
+        CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit("cu0", () -> blocker);
+        for (int i = 0; i < 4; i++) {
+            submitCompleted(scheduler, "cu1");
+            submitCompleted(scheduler, "cu2");
+        }
+        assertEquals(List.of(), started);
+
+        blocker.complete("done");
+
+        assertEquals(List.of("cu1", "cu1", "cu2", "cu1", "cu1", "cu2", "cu2", "cu2"), started);
+    }
+
+    @Test
+    void orgNeverRunsMoreThanItsOwnLimit() {
+        TenantScheduler scheduler = new TenantScheduler(new MockEnvironment()
+                .withProperty("workflow.tenant.cu1.max-in-flight", "1"));
+        CompletableFuture<String> first = new CompletableFuture<>();
+        scheduler.submit("cu1", () -> first);
+        CompletableFuture<String> second = submitCompleted(scheduler, "cu1");
+        CompletableFuture<String> otherOrg = submitCompleted(scheduler, "cu2");
+
+        assertFalse(second.isDone());
+        assertTrue(otherOrg.isDone());
+
+        first.complete("done");
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    void requestsPastTheOrgsQueueCapacityAreRejected() {
+        TenantScheduler scheduler = new TenantScheduler(new MockEnvironment()
+                .withProperty("workflow.tenant.max-in-flight", "1")
+                .withProperty("workflow.tenant.default.queue-capacity", "1"));
+        scheduler.submit("cu1", CompletableFuture::new);
+        submitCompleted(scheduler, "cu1");
+
+        assertThrows(WorkflowRejectedException.class, () -> submitCompleted(scheduler, "cu1"));
+    }
+
+    @Test
+    void pipelineCancelledWhileQueuedNeverStarts() {
+        TenantScheduler scheduler = new TenantScheduler(new MockEnvironment()
+                .withProperty("workflow.tenant.max-in-flight", "1"));
+        CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit("cu1", () -> blocker);
+        CompletableFuture<String> queued = submitCompleted(scheduler, "cu2");
+        CompletableFuture<String> next = submitCompleted(scheduler, "cu3");
+
+        queued.cancel(false);
+        blocker.complete("done");
+
+        assertEquals(List.of("cu3"), started);
+        assertTrue(next.isDone());
+    }
+
+    private CompletableFuture<String> submitCompleted(TenantScheduler scheduler, String org) {
+        return scheduler.submit(org, () -> {
+            started.add(org);
+            return CompletableFuture.completedFuture(org);
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package coop.constellation.connectorservices.workflowexample.service;
+
+import com.xtensifi.connectorservices.common.workflow.ConnectorHubService;
+import com.xtensifi.dspco.ConnectorMessage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.*;
+
+class WorkflowDrainTest {
+
+    private final ConnectorMessage connectorMessage = mock(ConnectorMessage.class);
+    private ConnectorHubService connectorHubService;
+    private WorkflowDrain drain;
+
+    @BeforeEach
+    void setUp() {
+        connectorHubService = mock(ConnectorHubService.class);
+        drain = new WorkflowDrain(connectorHubService,
+                new MockEnvironment().withProperty("workflow.drain.timeout-ms", "0"));
+        drain.start();
+    }
+
+    @Test
+    void pipelineThatClaimedItsMessageIsLeftToCompleteIt() {
+        CompletableFuture<ConnectorMessage> pipeline = drain.track("startTransfer", connectorMessage,
+                new CompletableFuture<>());
+        assertTrue(drain.mayComplete(connectorMessage));
+
+        drain.stop();
+
+        verify(connectorHubService, never()).handleAsyncFlowError(any(), any(), anyString());
+        assertFalse(pipeline.isCancelled());
+        assertTrue(drain.mayComplete(connectorMessage));
+    }
+
+    @Test
+    void pipelineLeftAtTheTimeoutIsFailedOnceAndMayNotCompleteAfterwards() {
+        CompletableFuture<ConnectorMessage> pipeline = drain.track("startTransfer", connectorMessage,
+                new CompletableFuture<>());
+
+        drain.stop();
+
+        verify(connectorHubService, times(1)).handleAsyncFlowError(any(), same(connectorMessage), anyString());
+        assertTrue(pipeline.isCancelled());
+        assertFalse(drain.mayComplete(connectorMessage));
+        assertEquals(1L, drain.get().get("abandoned"));
+    }
+
+    @Test
+    void pipelineThatFinishedBeforeTheTimeoutIsNotFailed() {
+        CompletableFuture<ConnectorMessage> pipeline = drain.track("startTransfer", connectorMessage,
+                new CompletableFuture<>());
+        pipeline.complete(connectorMessage);
+
+        drain.stop();
+
+        verify(connectorHubService, never()).handleAsyncFlowError(any(), any(), anyString());
+        assertTrue(drain.mayComplete(connectorMessage));
+    }
+
+    @Test
+    void stopTurnsNewRequestsAwayAndReportsNotReady() {
+        assertTrue(drain.isAccepting());
+        assertTrue(drain.isReady());
+
+        drain.stop();
+
+        assertFalse(drain.isAccepting());
+        assertFalse(drain.isReady());
+    }
+}